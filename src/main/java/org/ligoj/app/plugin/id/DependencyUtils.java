@@ -0,0 +1,95 @@
+package org.ligoj.app.plugin.id;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Dependency utilities. Used to process tree data such as nested groups, parents first.
+ */
+public final class DependencyUtils {
+
+	/**
+	 * Depth marker of an item involved in a cycle.
+	 */
+	private static final int CYCLE = -1;
+
+	private DependencyUtils() {
+		// Factory pattern
+	}
+
+	/**
+	 * Split the given items into levels ordered by depth : an item is always placed in a level after the one of its
+	 * parent. A parent not found among the items is considered as already existing, so the item is placed in the first
+	 * level. Items involved in a cycle, or having an ancestor involved in a cycle, are not placed in any level.
+	 *
+	 * @param items
+	 *            The items to order.
+	 * @param toId
+	 *            The function returning the normalized identifier of an item.
+	 * @param toParent
+	 *            The function returning the normalized identifier of the parent of an item. May return
+	 *            <code>null</code>.
+	 * @param <E>
+	 *            The item type.
+	 * @return The levels, parents first. The order of the items is kept within a level.
+	 */
+	public static <E> List<List<E>> toLevels(final Collection<E> items, final Function<E, String> toId, final Function<E, String> toParent) {
+		final Map<String, E> byId = new HashMap<>();
+		items.forEach(i -> byId.putIfAbsent(toId.apply(i), i));
+
+		// Compute the depth of each item, and dispatch it in the right level
+		final Map<E, Integer> depths = new IdentityHashMap<>();
+		final List<List<E>> levels = new ArrayList<>();
+		for (final E item : items) {
+			final int depth = toDepth(item, byId, toParent, depths);
+			if (depth != CYCLE) {
+				while (levels.size() <= depth) {
+					levels.add(new ArrayList<>());
+				}
+				levels.get(depth).add(item);
+			}
+		}
+		return levels;
+	}
+
+	/**
+	 * Return the depth of the given item, and also the one of its not yet computed ancestors.
+	 */
+	private static <E> int toDepth(final E item, final Map<String, E> byId, final Function<E, String> toParent, final Map<E, Integer> depths) {
+		// Walk up to the first ancestor having a known depth, or to the root
+		final Deque<E> path = new ArrayDeque<>();
+		final Set<E> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		E current = item;
+		while (current != null && !depths.containsKey(current)) {
+			if (!visited.add(current)) {
+				// Cycle detected, the whole path cannot be resolved
+				path.forEach(e -> depths.put(e, CYCLE));
+				return CYCLE;
+			}
+			path.push(current);
+			current = byId.get(toParent.apply(current));
+		}
+
+		if (current != null && depths.get(current) == CYCLE) {
+			// An ancestor is involved in a cycle
+			path.forEach(e -> depths.put(e, CYCLE));
+			return CYCLE;
+		}
+
+		// Walk down from the resolved ancestor
+		int depth = current == null ? -1 : depths.get(current);
+		while (!path.isEmpty()) {
+			depths.put(path.pop(), ++depth);
+		}
+		return depths.get(item);
+	}
+}
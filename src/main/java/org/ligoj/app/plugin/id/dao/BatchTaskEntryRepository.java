@@ -0,0 +1,73 @@
+package org.ligoj.app.plugin.id.dao;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.ligoj.app.plugin.id.model.BatchTaskEntry;
+import org.ligoj.bootstrap.core.dao.RestRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * {@link BatchTaskEntry} repository.
+ */
+public interface BatchTaskEntryRepository extends RestRepository<BatchTaskEntry, Integer> {
+
+	/**
+	 * Return the entries of a task, ordered by position.
+	 * 
+	 * @param task
+	 *            The task's internal identifier.
+	 * @param status
+	 *            The optional status to filter. When <code>null</code>, all entries are returned.
+	 * @param page
+	 *            The {@link Pageable} context.
+	 * @return The entries of the task.
+	 */
+	@Query("FROM BatchTaskEntry WHERE task.id = :task AND (:status IS NULL OR status = :status) ORDER BY line")
+	Page<BatchTaskEntry> findAll(@Param("task") int task, @Param("status") Boolean status, Pageable page);
+
+	/**
+	 * Return all the entries of a task, ordered by position.
+	 * 
+	 * @param task
+	 *            The task's internal identifier.
+	 * @return The entries of the task.
+	 */
+	@Query("FROM BatchTaskEntry WHERE task.id = ?1 ORDER BY line")
+	List<BatchTaskEntry> findAllBy(int task);
+
+	/**
+	 * Update the status of some entries sharing the same result.
+	 * 
+	 * @param task
+	 *            The task's internal identifier.
+	 * @param lines
+	 *            The positions of the entries.
+	 * @param status
+	 *            The new status.
+	 * @param statusText
+	 *            The new status text.
+	 * @param error
+	 *            The identifier of the failure in the errors of the task.
+	 * @return The amount of updated entries.
+	 */
+	@Modifying
+	@Query("UPDATE BatchTaskEntry SET status = ?3, statusText = ?4, error = ?5 WHERE task.id = ?1 AND line IN ?2")
+	int updateStatus(int task, Collection<Integer> lines, Boolean status, String statusText, Integer error);
+
+	/**
+	 * Delete the entries of the tasks completed before the given date.
+	 * 
+	 * @param date
+	 *            The completion date limit.
+	 * @return The amount of deleted entries.
+	 */
+	@Modifying
+	@Query("DELETE BatchTaskEntry WHERE task.id IN (SELECT id FROM BatchTask WHERE end < ?1)")
+	int deleteAllBefore(Date date);
+}
@@ -0,0 +1,79 @@
+package org.ligoj.app.plugin.id.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import org.ligoj.app.plugin.id.model.BatchTask;
+import org.ligoj.bootstrap.core.dao.RestRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+/**
+ * {@link BatchTask} repository.
+ */
+public interface BatchTaskRepository extends RestRepository<BatchTask, Integer> {
+
+	/**
+	 * Return the task of a principal from its public identifier.
+	 * 
+	 * @param principal
+	 *            User principal requesting the import.
+	 * @param batch
+	 *            The public identifier of the task.
+	 * @return The task or <code>null</code>.
+	 */
+	@Query("FROM BatchTask WHERE principal = ?1 AND batch = ?2")
+	BatchTask findBy(String principal, long batch);
+
+	/**
+	 * Return the tasks of a resource interrupted before their completion.
+	 * 
+	 * @param resource
+	 *            The resource class name able to resume the tasks.
+	 * @return The interrupted tasks.
+	 */
+	@Query("FROM BatchTask WHERE end IS NULL AND resource = ?1 ORDER BY id")
+	List<BatchTask> findAllInterrupted(String resource);
+
+	/**
+	 * Take the ownership of an interrupted task, unless another node has confirmed it runs this task since the given
+	 * date.
+	 * 
+	 * @param id
+	 *            The task's internal identifier.
+	 * @param owner
+	 *            The new owner.
+	 * @param now
+	 *            The current date.
+	 * @param expired
+	 *            The date before which the heartbeat of the previous owner is expired.
+	 * @return The amount of claimed tasks : <code>1</code> when the ownership has been taken.
+	 */
+	@Modifying
+	@Query("UPDATE BatchTask SET owner = ?2, heartbeat = ?3 WHERE id = ?1 AND end IS NULL AND (heartbeat IS NULL OR heartbeat < ?4)")
+	int claim(int id, String owner, Date now, Date expired);
+
+	/**
+	 * Confirm the given owner is running its tasks.
+	 * 
+	 * @param owner
+	 *            The owner of the running tasks.
+	 * @param now
+	 *            The current date.
+	 * @return The amount of updated tasks.
+	 */
+	@Modifying
+	@Query("UPDATE BatchTask SET heartbeat = ?2 WHERE owner = ?1 AND end IS NULL")
+	int heartbeat(String owner, Date now);
+
+	/**
+	 * Delete the tasks completed before the given date.
+	 * 
+	 * @param date
+	 *            The completion date limit.
+	 * @return The amount of deleted tasks.
+	 */
+	@Modifying
+	@Query("DELETE BatchTask WHERE end < ?1")
+	int deleteAllBefore(Date date);
+}
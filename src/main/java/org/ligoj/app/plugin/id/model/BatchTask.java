@@ -0,0 +1,160 @@
+package org.ligoj.app.plugin.id.model;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+import javax.validation.constraints.NotNull;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A batch task, checkpointed while running, and completed. The public identifier is unique for a principal.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "LIGOJ_ID_BATCH_TASK", uniqueConstraints = @UniqueConstraint(columnNames = { "principal", "batch" }))
+public class BatchTask extends AbstractPersistable<Integer> {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The public identifier of this task.
+	 */
+	private long batch;
+
+	/**
+	 * User principal requesting the import.
+	 */
+	@NotNull
+	private String principal;
+
+	/**
+	 * The entry class name. <code>null</code> when there is no stored entry.
+	 */
+	private String type;
+
+	/**
+	 * Transaction start.
+	 */
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "start_date")
+	private Date start;
+
+	/**
+	 * Scheduled time of the processing. <code>null</code> when the processing starts as soon as possible.
+	 */
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "not_before")
+	private Date notBefore;
+
+	/**
+	 * Transaction end. <code>null</code> while running, or when interrupted.
+	 */
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "end_date")
+	private Date end;
+
+	/**
+	 * Total amount of entries.
+	 */
+	private int entries;
+
+	/**
+	 * Amount of proceeded entries.
+	 */
+	private int done;
+
+	/**
+	 * Amount of failed entries.
+	 */
+	private int failures;
+
+	/**
+	 * Import status.
+	 */
+	private Boolean status;
+
+	/**
+	 * The resource class name able to resume this task. <code>null</code> when this task cannot be resumed.
+	 */
+	private String resource;
+
+	/**
+	 * The class name of the task processing the entries.
+	 */
+	private String handler;
+
+	/**
+	 * The uploaded column names, comma separated. <code>null</code> when the entries have not been uploaded.
+	 */
+	private String columns;
+
+	/**
+	 * Amount of workers proceeding the entries.
+	 */
+	private int parallel;
+
+	/**
+	 * When <code>true</code>, the entries are proceeded by level of dependency.
+	 */
+	private boolean ordered;
+
+	/**
+	 * When <code>true</code>, the task runs on the elastic pool.
+	 */
+	private boolean elastic;
+
+	/**
+	 * When <code>true</code>, the entries are only checked.
+	 */
+	private boolean dryRun;
+
+	/**
+	 * Maximal rate of the writes of this task, in writes per second. When not positive, and not adaptive, there is no
+	 * limit for this task.
+	 */
+	private double rate;
+
+	/**
+	 * When <code>true</code>, the rate of this task follows the observed write latency.
+	 */
+	private boolean adaptive;
+
+	/**
+	 * The position of the first entry not yet proceeded at the last checkpoint. All the previous entries are
+	 * proceeded.
+	 */
+	@Column(name = "checkpoint_line")
+	private int checkpoint;
+
+	/**
+	 * The node running this task. <code>null</code> when completed before being stored.
+	 */
+	private String owner;
+
+	/**
+	 * Last time the owner has confirmed it is running this task. A task interrupted for a while can be resumed by
+	 * another node.
+	 */
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date heartbeat;
+
+	/**
+	 * The JSON serialized distinct failures of the entries. <code>null</code> when there is no failure.
+	 */
+	@Lob
+	private String errors;
+}
@@ -0,0 +1,71 @@
+package org.ligoj.app.plugin.id.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A stored entry of a completed batch task.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "LIGOJ_ID_BATCH_TASK_ENTRY", indexes = @Index(columnList = "task,line"))
+public class BatchTaskEntry extends AbstractPersistable<Integer> {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Maximal length of the status text.
+	 */
+	public static final int STATUS_TEXT_LENGTH = 1024;
+
+	/**
+	 * The owning task.
+	 */
+	@ManyToOne
+	@NotNull
+	@JsonIgnore
+	private BatchTask task;
+
+	/**
+	 * The position of this entry in the stored entries of the task, starting from 0.
+	 */
+	private int line;
+
+	/**
+	 * Import status. <code>null</code> when not proceeded.
+	 */
+	private Boolean status;
+
+	/**
+	 * Import status text, truncated to {@value #STATUS_TEXT_LENGTH} characters.
+	 */
+	@Column(length = STATUS_TEXT_LENGTH)
+	private String statusText;
+
+	/**
+	 * The identifier of the failure in the errors of the task. <code>null</code> when not failed.
+	 */
+	private Integer error;
+
+	/**
+	 * The JSON serialized entry.
+	 */
+	@Lob
+	private String data;
+}
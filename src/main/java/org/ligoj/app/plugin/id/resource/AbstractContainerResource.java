@@ -2,15 +2,25 @@ package org.ligoj.app.plugin.id.resource;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -23,10 +33,12 @@ import javax.ws.rs.core.UriInfo;
 import org.ligoj.app.api.Normalizer;
 import org.ligoj.app.iam.ContainerOrg;
 import org.ligoj.app.iam.IContainerRepository;
+import org.ligoj.app.iam.UserOrg;
 import org.ligoj.app.iam.dao.CacheContainerRepository;
 import org.ligoj.app.iam.dao.DelegateOrgRepository;
 import org.ligoj.app.iam.model.CacheContainer;
 import org.ligoj.app.model.ContainerType;
+import org.ligoj.app.plugin.id.DependencyUtils;
 import org.ligoj.app.plugin.id.DnUtils;
 import org.ligoj.app.plugin.id.model.ContainerScope;
 import org.ligoj.bootstrap.core.NamedBean;
@@ -38,9 +50,13 @@ import org.ligoj.bootstrap.core.resource.OnNullReturn404;
 import org.ligoj.bootstrap.core.security.SecurityHelper;
 import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -60,6 +76,11 @@ public abstract class AbstractContainerResource<T extends ContainerOrg, V extend
 
 	protected static final String TYPE_ATTRIBUTE = "type";
 
+	/**
+	 * Maximal amount of containers of the same level created concurrently by a bulk creation.
+	 */
+	protected static final int BULK_PARALLELISM = 4;
+
 	@Autowired
 	protected ContainerScopeResource containerScopeResource;
 
@@ -72,6 +93,12 @@ public abstract class AbstractContainerResource<T extends ContainerOrg, V extend
 	@Autowired
 	protected DelegateOrgRepository delegateRepository;
 
+	@Autowired
+	protected PlatformTransactionManager transactionManager;
+
+	@Autowired
+	protected TaskExecutor executor;
+
 	/**
 	 * The container type manager by this instance.
 	 */
@@ -109,6 +136,33 @@ public abstract class AbstractContainerResource<T extends ContainerOrg, V extend
 	 */
 	protected abstract String toDn(V container, ContainerScope type);
 
+	/**
+	 * Return the DN from the container and the computed type. The parent of the container may be one of the
+	 * containers being created by the same bulk operation.
+	 * 
+	 * @param container
+	 *            The container to create.
+	 * @param type
+	 *            The scope of the container.
+	 * @param newDns
+	 *            The DN of the containers created by the same bulk operation. Key is the normalized identifier.
+	 * @return The DN of the container.
+	 */
+	protected String toDn(final V container, final ContainerScope type, final Map<String, String> newDns) {
+		return toDn(container, type);
+	}
+
+	/**
+	 * Return the normalized identifier of the parent of the given container.
+	 * 
+	 * @param container
+	 *            The container to create.
+	 * @return The normalized identifier of the parent or <code>null</code>. By default, there is no parent.
+	 */
+	protected String getParent(final V container) {
+		return null;
+	}
+
 	/**
 	 * Simple transformer, securing sensible date. DN is not forwarded.
 	 */
@@ -164,32 +218,223 @@ public abstract class AbstractContainerResource<T extends ContainerOrg, V extend
 	 * @return The created {@link org.ligoj.app.iam.ContainerOrg} internal identifier.
 	 */
 	public T createInternal(final V container) {
-
 		// Check the unlocked scope exists
 		final ContainerScope scope = containerScopeResource.findById(container.getScope());
 
-		// Check the type matches with this class' container type
-		if (this.type != scope.getType()) {
-			throw new ValidationJsonException(TYPE_ATTRIBUTE, "container-scope-match", TYPE_ATTRIBUTE, this.type, "provided", scope.getType());
-		}
+		// Create the new group
+		return create(container, scope, checkCreate(container, scope));
+	}
+
+	/**
+	 * Check the given container can be created by the current user, without any change.
+	 * 
+	 * @param container
+	 *            The container to create.
+	 * @return The DN of the container to create.
+	 */
+	public String checkCreate(final V container) {
+		return checkCreate(container, Collections.emptyMap());
+	}
+
+	/**
+	 * Check the given container can be created by the current user, without any change. The parent of the container
+	 * may be one of the containers planned to be created before this one.
+	 * 
+	 * @param container
+	 *            The container to create.
+	 * @param newDns
+	 *            The DN of the containers planned to be created. Key is the normalized identifier.
+	 * @return The DN of the container to create.
+	 */
+	public String checkCreate(final V container, final Map<String, String> newDns) {
+		return checkCreate(container, containerScopeResource.findById(container.getScope()), newDns);
+	}
+
+	/**
+	 * Check the given container can be created by the current user, and return the DN of the container to create.
+	 */
+	private String checkCreate(final V container, final ContainerScope scope) {
+		return checkCreate(container, scope, Collections.emptyMap());
+	}
+
+	/**
+	 * Check the given container can be created by the current user, and return the DN of the container to create.
+	 * The parent may be one of the given containers to create.
+	 */
+	private String checkCreate(final V container, final ContainerScope scope, final Map<String, String> newDns) {
+		checkScope(scope);
 
 		// Build the new DN, keeping the case
-		final String newDn = toDn(container, scope);
+		final String newDn = toDn(container, scope, newDns);
 
-		// Check the container can be created by the current user. Used DN will be FQN to match the delegates
-		if (!delegateRepository.isAdmin(securityHelper.getLogin(), Normalizer.normalize(newDn), this.type.getDelegateType())) {
-			// Not managed container, report this attempt and act as if this container already exists
-			log.warn("Attempt to create a {} '{}' out of scope", scope, container.getName());
-			throw new ValidationJsonException("name", "already-exist", "0", getTypeName(), "1", container.getName());
-		}
+		// Check the container can be created by the current user
+		checkForCreation(securityHelper.getLogin(), container, scope, newDn);
 
 		// Check the group does not exists
 		if (getRepository().findById(Normalizer.normalize(container.getName())) != null) {
 			throw new ValidationJsonException("name", "already-exist", "0", getTypeName(), "1", container.getName());
 		}
+		return newDn;
+	}
 
-		// Create the new group
-		return create(container, scope, newDn);
+	/**
+	 * Create the given containers.<br>
+	 * The containers are ordered by their parent, so a parent can be declared after its children. The scopes, the
+	 * rights, the existence and the related objects of all containers are checked before any creation, then the
+	 * containers of the same depth are created concurrently, a depth after the one of the parents. When a creation
+	 * fails, the containers already created by this operation are deleted, and the failed container is reported.
+	 * 
+	 * @param containers
+	 *            The containers to create.
+	 * @return The identifiers of created {@link org.ligoj.app.iam.ContainerOrg}, in the same order.
+	 */
+	@POST
+	@Path("bulk")
+	public List<String> createBulk(final List<V> containers) {
+		// Order the containers by depth, parents first
+		final List<List<V>> levels = DependencyUtils.toLevels(containers, c -> Normalizer.normalize(c.getName()), this::getParent);
+		if (levels.stream().mapToInt(List::size).sum() != containers.size()) {
+			throw new ValidationJsonException("parent", "container-parent-cycle", "0", getTypeName());
+		}
+
+		// Check all the containers in one pass
+		final String principal = securityHelper.getLogin();
+		final Map<String, T> existing = getRepository().findAll();
+		final Map<String, UserOrg> users = getUser().findAll();
+		final Map<Integer, ContainerScope> scopes = new HashMap<>();
+		final Map<String, String> newDns = new HashMap<>();
+		levels.stream().flatMap(List::stream).forEach(container -> {
+			final ContainerScope scope = scopes.computeIfAbsent(container.getScope(), containerScopeResource::findById);
+			checkScope(scope);
+			final String newDn = toDn(container, scope, newDns);
+			checkForCreation(principal, container, scope, newDn);
+			final String id = Normalizer.normalize(container.getName());
+			if (existing.containsKey(id) || newDns.containsKey(id)) {
+				throw new ValidationJsonException("name", "already-exist", "0", getTypeName(), "1", container.getName());
+			}
+			checkRelated(container, users);
+			newDns.put(id, newDn);
+		});
+
+		// Create each level with bounded parallelism, the parents are created by the previous level
+		final Deque<T> created = new ConcurrentLinkedDeque<>();
+		final Executor bulkExecutor = new DelegatingSecurityContextExecutor(executor);
+		for (final List<V> level : levels) {
+			final Map<V, RuntimeException> failures = create(level,
+					c -> create(c, scopes.get(c.getScope()), newDns.get(Normalizer.normalize(c.getName())), users), created, bulkExecutor);
+			if (!failures.isEmpty()) {
+				// Undo this operation, and report the first failed container
+				rollback(created);
+				final V failed = level.stream().filter(failures::containsKey).findFirst().orElseThrow(IllegalStateException::new);
+				final RuntimeException cause = failures.get(failed);
+				throw new BusinessException("container-bulk-failed", cause, failed.getName(), cause.getMessage());
+			}
+		}
+		return containers.stream().map(ContainerEditionVo::getName).map(Normalizer::normalize).collect(Collectors.toList());
+	}
+
+	/**
+	 * Create the containers of a level with at most {@value #BULK_PARALLELISM} concurrent creations, each one in its own
+	 * transaction. No more creation is started after a failure.
+	 * 
+	 * @return The failures by container. Empty when all containers are created.
+	 */
+	private Map<V, RuntimeException> create(final List<V> level, final Function<V, T> creation, final Collection<T> created,
+			final Executor bulkExecutor) {
+		final Queue<V> pending = new ConcurrentLinkedQueue<>(level);
+		final Map<V, RuntimeException> failures = new ConcurrentHashMap<>();
+		final Runnable worker = () -> {
+			for (V container = pending.poll(); container != null && failures.isEmpty(); container = pending.poll()) {
+				final V current = container;
+				try {
+					created.add(new TransactionTemplate(transactionManager).execute(s -> creation.apply(current)));
+				} catch (final RuntimeException e) {
+					log.warn("Bulk creation of {} '{}' failed", type, current.getName(), e);
+					failures.put(current, e);
+				}
+			}
+		};
+		CompletableFuture.allOf(IntStream.range(0, Math.min(level.size(), BULK_PARALLELISM))
+				.mapToObj(i -> CompletableFuture.runAsync(worker, bulkExecutor)).toArray(CompletableFuture[]::new)).join();
+		return failures;
+	}
+
+	/**
+	 * Delete the given created containers, the last created first. A failed deletion does not stop the other ones.
+	 */
+	private void rollback(final Deque<T> created) {
+		created.descendingIterator().forEachRemaining(container -> {
+			try {
+				new TransactionTemplate(transactionManager).execute(s -> {
+					getRepository().delete(container);
+					return null;
+				});
+			} catch (final RuntimeException e) {
+				log.error("Unable to delete the {} '{}' created by a failed bulk creation", type, container.getName(), e);
+			}
+		});
+	}
+
+	/**
+	 * Check the objects related to the given container, such as the referenced users, before any creation.
+	 * 
+	 * @param container
+	 *            The container to create.
+	 * @param users
+	 *            All users. Key is the normalized identifier.
+	 */
+	protected void checkRelated(final V container, final Map<String, UserOrg> users) {
+		// No related object by default
+	}
+
+	/**
+	 * Create the given container, the referenced users are resolved from the given ones. Used by the bulk creation to
+	 * read all users only once.
+	 * 
+	 * @param container
+	 *            The container to create.
+	 * @param type
+	 *            The scope of the container.
+	 * @param newDn
+	 *            The DN of the container to create.
+	 * @param users
+	 *            All users. Key is the normalized identifier.
+	 * @return The created container.
+	 */
+	protected T create(final V container, final ContainerScope type, final String newDn, final Map<String, UserOrg> users) {
+		return create(container, type, newDn);
+	}
+
+	/**
+	 * Check the type of given scope matches with this class' container type.
+	 * 
+	 * @param scope
+	 *            The scope to check.
+	 */
+	protected void checkScope(final ContainerScope scope) {
+		if (this.type != scope.getType()) {
+			throw new ValidationJsonException(TYPE_ATTRIBUTE, "container-scope-match", TYPE_ATTRIBUTE, this.type, "provided", scope.getType());
+		}
+	}
+
+	/**
+	 * Check the container can be created by the given user. Used DN will be FQN to match the delegates.
+	 * 
+	 * @param principal
+	 *            The user creating the container.
+	 * @param container
+	 *            The container to create.
+	 * @param scope
+	 *            The scope of the container.
+	 * @param newDn
+	 *            The DN of the container to create.
+	 */
+	protected void checkForCreation(final String principal, final V container, final ContainerScope scope, final String newDn) {
+		if (!delegateRepository.isAdmin(principal, Normalizer.normalize(newDn), this.type.getDelegateType())) {
+			// Not managed container, report this attempt and act as if this container already exists
+			log.warn("Attempt to create a {} '{}' out of scope", scope, container.getName());
+			throw new ValidationJsonException("name", "already-exist", "0", getTypeName(), "1", container.getName());
+		}
 	}
 
 	protected T create(final V container, final ContainerScope type, final String newDn) {
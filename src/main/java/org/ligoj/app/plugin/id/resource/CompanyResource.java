@@ -1,9 +1,13 @@
 package org.ligoj.app.plugin.id.resource;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.transaction.Transactional;
@@ -15,6 +19,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.ligoj.app.iam.CompanyOrg;
 import org.ligoj.app.iam.ContainerOrg;
 import org.ligoj.app.iam.ICompanyRepository;
@@ -22,7 +27,6 @@ import org.ligoj.app.iam.UserOrg;
 import org.ligoj.app.iam.dao.CacheCompanyRepository;
 import org.ligoj.app.iam.model.CacheCompany;
 import org.ligoj.app.model.ContainerType;
-import org.ligoj.app.plugin.id.DnUtils;
 import org.ligoj.app.plugin.id.model.ContainerScope;
 import org.ligoj.bootstrap.core.json.TableItem;
 import org.ligoj.bootstrap.core.json.datatable.DataTableAttributes;
@@ -118,7 +122,7 @@ public class CompanyResource extends AbstractContainerResource<CompanyOrg, Conta
 		final Set<String> managedCompaniesAsString = managedCompanies.stream().map(CompanyOrg::getId).collect(Collectors.toSet());
 		final Set<CompanyOrg> managedCompaniesWrite = getContainersForWrite();
 		final Set<CompanyOrg> managedCompaniesAdmin = getContainersForAdmin();
-		final Map<String, UserOrg> users = getUser().findAll();
+		final Map<String, Long> occupancy = toOccupancy(getUser().findAll());
 
 		// Search the companies
 		final Page<CompanyOrg> findAll = getRepository().findAll(managedCompanies, DataTableAttributes.getSearch(uriInfo), pageRequest,
@@ -130,11 +134,10 @@ public class CompanyResource extends AbstractContainerResource<CompanyOrg, Conta
 			final ContainerCountVo securedUser = newContainerCountVo(rawCompanyLdap, managedCompaniesWrite, managedCompaniesAdmin, types);
 
 			// Computed the total members, unrestricted visibility
-			securedUser.setCount((int) users.values().stream().filter(user -> rawCompanyLdap.getId().equals(user.getCompany())).count());
+			securedUser.setCount(occupancy.getOrDefault(rawCompanyLdap.getId(), 0L).intValue());
 
 			// Computed the visible members : same company and visible company
-			securedUser.setCountVisible((int) users.values().stream().filter(user -> rawCompanyLdap.getId().equals(user.getCompany()))
-					.filter(user -> managedCompaniesAsString.contains(user.getCompany())).count());
+			securedUser.setCountVisible(managedCompaniesAsString.contains(rawCompanyLdap.getId()) ? securedUser.getCount() : 0);
 			return securedUser;
 		});
 	}
@@ -144,14 +147,47 @@ public class CompanyResource extends AbstractContainerResource<CompanyOrg, Conta
 		super.checkForDeletion(container);
 
 		// Company deletion is only possible where there is no user inside this company, or inside any sub-company
-		final Map<String, UserOrg> users = getUser().findAll();
-		if (getRepository().findAll().values().stream().filter(c -> DnUtils.equalsOrParentOf(container.getDn(), c.getDn()))
-				.anyMatch(c -> users.values().stream().map(UserOrg::getCompany).anyMatch(c.getId()::equals))) {
+		if (toTreeOccupancy(getRepository().findAll(), toOccupancy(getUser().findAll())).containsKey(container.getDn())) {
 			// Locked container is inside the container to delete
 			throw new ValidationJsonException(getTypeName(), "not-empty-company", "0", getTypeName(), "1", container.getId());
 		}
 	}
 
+	/**
+	 * Return the amount of users of each company. Sub-companies are not included.
+	 * 
+	 * @param users
+	 *            All users.
+	 * @return The amount of users by company identifier. Companies without user are not included.
+	 */
+	protected Map<String, Long> toOccupancy(final Map<String, UserOrg> users) {
+		return users.values().stream().map(UserOrg::getCompany).filter(Objects::nonNull)
+				.collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+	}
+
+	/**
+	 * Return the amount of users of each company tree : the users of the company and the ones of all its
+	 * sub-companies. Built in <code>O(companies * depth)</code> from the company counters, so the emptiness of a tree
+	 * can be checked without scanning all users for each company of this tree.
+	 * 
+	 * @param companies
+	 *            All companies. Key is the normalized identifier.
+	 * @param occupancy
+	 *            The amount of users by company identifier, as built once by {@link #toOccupancy(Map)}.
+	 * @return The amount of users by company tree. Key is a DN or a parent DN of a company. Trees without user are not
+	 *         included.
+	 */
+	protected Map<String, Long> toTreeOccupancy(final Map<String, CompanyOrg> companies, final Map<String, Long> occupancy) {
+		final Map<String, Long> treeOccupancy = new HashMap<>();
+		occupancy.forEach((company, count) -> Optional.ofNullable(companies.get(company)).map(CompanyOrg::getDn).ifPresent(dn -> {
+			// Propagate the count to the company and all its parents
+			for (String parentDn = dn; parentDn != null; parentDn = StringUtils.trimToNull(StringUtils.substringAfter(parentDn, ","))) {
+				treeOccupancy.merge(parentDn, count, Long::sum);
+			}
+		}));
+		return treeOccupancy;
+	}
+
 	@Override
 	protected String toDn(final ContainerEditionVo container, final ContainerScope type) {
 		return "ou=" + container.getName() + "," + type.getDn();
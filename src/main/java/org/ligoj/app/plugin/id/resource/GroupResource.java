@@ -1,14 +1,16 @@
 package org.ligoj.app.plugin.id.resource;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.transaction.Transactional;
 import javax.ws.rs.GET;
-import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -119,29 +121,37 @@ public class GroupResource extends AbstractContainerResource<GroupOrg, GroupEdit
 
 	@Override
 	protected String toDn(final GroupEditionVo container, final ContainerScope type) {
+		return toDn(container, type, Collections.emptyMap());
+	}
+
+	@Override
+	protected String toDn(final GroupEditionVo container, final ContainerScope type, final Map<String, String> newDns) {
 		String parentDn = type.getDn();
-		container.setParent(StringUtils.trimToNull(Normalizer.normalize(container.getParent())));
-		if (container.getParent() != null) {
-			// Check the parent is also inside the type, a new DN will be built
-			final GroupOrg parent = findByIdExpected(container.getParent());
-			if (!DnUtils.equalsOrParentOf(type.getDn(), parent.getDn())) {
+		final String parent = getParent(container);
+		if (parent != null) {
+			// Check the parent is also inside the type, a new DN will be built. The parent may be created by the same bulk
+			parentDn = Optional.ofNullable(newDns.get(parent)).orElseGet(() -> findByIdExpected(parent).getDn());
+			if (!DnUtils.equalsOrParentOf(type.getDn(), parentDn)) {
 				throw new ValidationJsonException("parent", "container-parent-type-match", TYPE_ATTRIBUTE, this.type, "provided", type.getType());
 			}
-			parentDn = parent.getDn();
 		}
 
 		return "cn=" + container.getName() + "," + parentDn;
 	}
 
+	@Override
+	protected String getParent(final GroupEditionVo container) {
+		return StringUtils.trimToNull(Normalizer.normalize(container.getParent()));
+	}
+
 	/**
-	 * Empty this group by removing all members if supported by the LDAP schema<br>
+	 * Return a group the current user can update.
 	 * 
 	 * @param id
-	 *            The group to empty.
+	 *            The group identifier.
+	 * @return The group to update.
 	 */
-	@POST
-	@Path("empty/{id}")
-	public void empty(@PathParam("id") final String id) {
+	public GroupOrg findByIdForWrite(final String id) {
 		// Check the group exists
 		final GroupOrg container = findByIdExpected(id);
 
@@ -149,42 +159,114 @@ public class GroupResource extends AbstractContainerResource<GroupOrg, GroupEdit
 		if (!getContainersForWrite().contains(container)) {
 			throw new ValidationJsonException(getTypeName(), BusinessException.KEY_UNKNOW_ID, "0", getTypeName(), "1", id);
 		}
+		return container;
+	}
+
+	/**
+	 * Remove a user from the given group. Note the security is not checked there.
+	 * 
+	 * @param group
+	 *            The normalized group identifier to update.
+	 * @param user
+	 *            The user to remove.
+	 */
+	public void removeUser(final String group, final String user) {
+		getRepository().removeUser(getUser().findByIdExpected(user), group);
+	}
+
+	/**
+	 * Remove a user from the given group. Note the security is not checked there.
+	 * 
+	 * @param group
+	 *            The normalized group identifier to update.
+	 * @param user
+	 *            The user to remove, as returned by {@link #findAllUsers()}.
+	 */
+	public void removeUser(final String group, final UserOrg user) {
+		getRepository().removeUser(user, group);
+	}
+
+	/**
+	 * Return all the users. Note the security is not checked there.
+	 * 
+	 * @return All the users. Key is the normalized login.
+	 */
+	public Map<String, UserOrg> findAllUsers() {
+		return getUser().findAll();
+	}
 
-		// Perform the update
-		getRepository().empty(container, getUser().findAll());
+	/**
+	 * Also check the owners and the assistants exist.
+	 */
+	@Override
+	public String checkCreate(final GroupEditionVo container, final Map<String, String> newDns) {
+		final String newDn = super.checkCreate(container, newDns);
+		checkRelated(container, getUser().findAll());
+		return newDn;
+	}
+
+	/**
+	 * Check the owners and the assistants exist.
+	 */
+	@Override
+	protected void checkRelated(final GroupEditionVo container, final Map<String, UserOrg> users) {
+		toAttributes(container, users);
 	}
 
 	@Override
 	protected GroupOrg create(final GroupEditionVo container, final ContainerScope type, final String newDn) {
-		// Check the related objects
-		final List<String> assistants = toDn(container.getAssistants());
-		final List<String> owners = toDn(container.getOwners());
+		return create(container, type, newDn, getUser().findAll());
+	}
+
+	@Override
+	protected GroupOrg create(final GroupEditionVo container, final ContainerScope type, final String newDn, final Map<String, UserOrg> users) {
+		// Check the related objects and build the full attribute set before the creation
+		final Map<String, Collection<String>> attributes = toAttributes(container, users);
 
-		// Create the group
+		// Create the group with its attributes
 		final GroupOrg groupLdap = super.create(container, type, newDn);
+		attributes.forEach((attribute, values) -> getRepository().addAttributes(newDn, attribute, values));
 
 		// Nesting management
-		if (container.getParent() != null) {
+		final String parent = getParent(container);
+		if (parent != null) {
 			// This group will be added as "uniqueMember" of its parent
-			getRepository().addGroup(groupLdap, Normalizer.normalize(container.getParent()));
+			getRepository().addGroup(groupLdap, parent);
 		}
-
-		// Assistant/Owner/Department management
-		getRepository().addAttributes(newDn, "seeAlso", assistants);
-		getRepository().addAttributes(newDn, "owner", owners);
-		getRepository().addAttributes(newDn, "businessCategory", CollectionUtils.emptyIfNull(container.getDepartments()));
-
 		return groupLdap;
 	}
 
+	/**
+	 * Build the additional attributes of a new group : assistants, owners and departments. The related users are
+	 * resolved from the given users. Attributes without value are not included.
+	 * 
+	 * @param container
+	 *            The group to create.
+	 * @param users
+	 *            All users. Key is the normalized UID.
+	 * @return The attribute values of the new group. Key is the attribute name.
+	 */
+	private Map<String, Collection<String>> toAttributes(final GroupEditionVo container, final Map<String, UserOrg> users) {
+		final Map<String, Collection<String>> attributes = new LinkedHashMap<>();
+		attributes.put("seeAlso", toDn(users, container.getAssistants()));
+		attributes.put("owner", toDn(users, container.getOwners()));
+		attributes.put("businessCategory", CollectionUtils.emptyIfNull(container.getDepartments()));
+		attributes.values().removeIf(Collection::isEmpty);
+		return attributes;
+	}
+
 	/**
 	 * Convert the given user UIDs to a the corresponding DN. The users must exists.
 	 * 
+	 * @param users
+	 *            All users. Key is the normalized UID.
 	 * @param uids
 	 *            The UIDs to convert.
 	 * @return The corresponding DN.
 	 */
-	private List<String> toDn(final List<String> uids) {
-		return CollectionUtils.emptyIfNull(uids).stream().map(getUser()::findByIdExpected).map(UserOrg::getDn).collect(Collectors.toList());
+	private List<String> toDn(final Map<String, UserOrg> users, final List<String> uids) {
+		return CollectionUtils.emptyIfNull(uids).stream().map(uid -> Optional.ofNullable(users.get(Normalizer.normalize(uid))).orElseThrow(
+				() -> new ValidationJsonException("id", BusinessException.KEY_UNKNOW_ID, "0", "user", "1", uid))).map(UserOrg::getDn)
+				.collect(Collectors.toList());
 	}
 }
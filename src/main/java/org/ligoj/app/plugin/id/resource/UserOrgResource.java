@@ -260,11 +260,39 @@ public class UserOrgResource extends AbstractOrgResource {
 		final UserOrg rawUserOrg = getUser().findByIdExpected(securityHelper.getLogin(), Normalizer.normalize(user));
 
 		// User has been found, secure the object regarding the visible groups
-		final UserOrg securedUserOrg = new UserOrg();
-		rawUserOrg.copy(securedUserOrg);
+		return secure(rawUserOrg, groupResource.getContainers());
+	}
 
-		// Show only the groups of user that are also visible to current user
+	/**
+	 * Return the users from their logins, secured as {@link #findById(String)} does. The visible groups are computed
+	 * only once for all the users.
+	 *
+	 * @param users
+	 *            The users to find. A normalized form will be used for the search.
+	 * @return found users. Key is the normalized login. The users that do not exist or are within a non managed company
+	 *         are not returned.
+	 */
+	public Map<String, UserOrg> findAllById(final Collection<String> users) {
 		final Set<GroupOrg> managedGroups = groupResource.getContainers();
+		final Map<String, UserOrg> result = new HashMap<>();
+		for (final String user : users) {
+			final String id = Normalizer.normalize(user);
+			try {
+				result.put(id, secure(getUser().findByIdExpected(securityHelper.getLogin(), id), managedGroups));
+			} catch (final ValidationJsonException e) {
+				// Not visible user, ignored there
+				log.debug("User {} is not visible", id);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return a copy of the given user showing only the groups that are also visible to current user.
+	 */
+	private UserOrg secure(final UserOrg rawUserOrg, final Set<GroupOrg> managedGroups) {
+		final UserOrg securedUserOrg = new UserOrg();
+		rawUserOrg.copy(securedUserOrg);
 		securedUserOrg.setGroups(managedGroups.stream().filter(mGroup -> rawUserOrg.getGroups().contains(mGroup.getId())).sorted()
 				.map(GroupOrg::getName).collect(Collectors.toList()));
 		return securedUserOrg;
@@ -342,13 +370,22 @@ public class UserOrgResource extends AbstractOrgResource {
 	 */
 	@PUT
 	public void update(final UserOrgEditionVo user) {
+		checkUpdate(user);
+		saveOrUpdate(user);
+	}
+
+	/**
+	 * Check the given user can be updated, without any change. The given user is normalized.
+	 * 
+	 * @param user
+	 *            The user definition, and associated groups.
+	 */
+	public void checkUpdate(final UserOrgEditionVo user) {
 		// Check the right on the company and the groups
 		validateChanges(securityHelper.getLogin(), user);
 
 		// Check the user exists
 		getUser().findByIdExpected(user.getId());
-
-		saveOrUpdate(user);
 	}
 
 	/**
@@ -360,6 +397,17 @@ public class UserOrgResource extends AbstractOrgResource {
 	 */
 	@POST
 	public void create(final UserOrgEditionVo user) {
+		checkCreate(user);
+		saveOrUpdate(user);
+	}
+
+	/**
+	 * Check the given user can be created, without any change. The given user is normalized.
+	 * 
+	 * @param user
+	 *            The user definition, and associated groups.
+	 */
+	public void checkCreate(final UserOrgEditionVo user) {
 		// Check the right on the company and the groups
 		validateChanges(securityHelper.getLogin(), user);
 
@@ -367,8 +415,21 @@ public class UserOrgResource extends AbstractOrgResource {
 		if (getUser().findById(user.getId()) != null) {
 			throw new ValidationJsonException(USER_KEY, "already-exist", "0", USER_KEY, "1", user.getId());
 		}
+	}
 
-		saveOrUpdate(user);
+	/**
+	 * Check the given operation can be executed on the given user, without any change.
+	 * 
+	 * @param user
+	 *            The user to alter.
+	 * @param mode
+	 *            The operation : "delete", "lock", "unlock", "isolate" or "restore".
+	 */
+	public void checkDeletion(final String user, final String mode) {
+		final UserOrg userOrg = checkDeletionRight(user, mode);
+		if ("delete".equals(mode)) {
+			checkLastMemberInGroups(userOrg, getGroup().findAll());
+		}
 	}
 
 	/**
@@ -1,43 +1,237 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.SequenceInputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
+import javax.annotation.PostConstruct;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
+import org.ligoj.app.plugin.id.model.BatchTask;
 import org.ligoj.bootstrap.core.SpringUtils;
+import org.ligoj.bootstrap.core.csv.CsvBeanReader;
 import org.ligoj.bootstrap.core.csv.CsvForBean;
+import org.ligoj.bootstrap.core.json.PaginationJson;
+import org.ligoj.bootstrap.core.json.TableItem;
 import org.ligoj.bootstrap.core.resource.BusinessException;
 import org.ligoj.bootstrap.core.resource.OnNullReturn404;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.ligoj.bootstrap.core.validation.ValidatorBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.ClassUtils;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * LDAP batch resource.
  */
+@Slf4j
 public abstract class AbstractBatchResource {
 
+	/**
+	 * Amount of entries read and validated at once in streaming mode.
+	 */
+	private static final int STREAMING_CHUNK = 1000;
+
+	/**
+	 * Maximal amount of workers of a task in parallel mode.
+	 */
+	private static final int MAX_PARALLEL = 16;
+
+	/**
+	 * Maximal amount of workers of a task running on the elastic pool.
+	 */
+	private static final int MAX_ELASTIC_PARALLEL = 256;
+
+	/**
+	 * Minimal amount of workers of a dry-run task. There is no write, so the checks are always proceeded in parallel.
+	 */
+	private static final int DRY_RUN_PARALLEL = 4;
+
+	/**
+	 * Amount of CSV records parsed and validated at once. The chunks are proceeded in parallel.
+	 */
+	private static final int PARSE_CHUNK = 5000;
+
+	/**
+	 * Maximal amount of invalid entries described in the message of a validation failure. All the violations are
+	 * reported.
+	 */
+	private static final int MAX_REPORTED = 100;
+
+	/**
+	 * Size of the buffer used to transcode an upload.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Maximal amount of bytes read to detect the format of the uploaded file.
+	 */
+	private static final int MAX_PEEK = 1024;
+
+	/**
+	 * Bytes of the UTF-8 byte order mark.
+	 */
+	private static final int[] BOM = { 0xEF, 0xBB, 0xBF };
+
+	/**
+	 * Leading bytes of a gzip stream.
+	 */
+	private static final int[] GZIP_MAGIC = { 0x1F, 0x8B };
+
+	/**
+	 * Leading bytes of a zip file.
+	 */
+	private static final int[] ZIP_MAGIC = { 'P', 'K', 0x03, 0x04 };
+
+	/**
+	 * Ordered columns of the entries. The entries are always ordered by position.
+	 */
+	private static final Map<String, String> ORDERED_COLUMNS = Collections.emptyMap();
+
+	/**
+	 * Media type of server-sent events.
+	 */
+	private static final String SERVER_SENT_EVENTS = "text/event-stream";
+
+	/**
+	 * Media type of CSV exports.
+	 */
+	private static final String CSV = "text/csv";
+
+	/**
+	 * Amount of stored entries read at once by the exports.
+	 */
+	private static final int EXPORT_CHUNK = 1000;
+
+	/**
+	 * Properties of the entries that are not uploaded.
+	 */
+	private static final String[] STATUS_PROPERTIES = { "status", "statusText", "error" };
+
+	/**
+	 * Minimal interval between two progress events, in milliseconds.
+	 */
+	private static final long MIN_PROGRESS_INTERVAL = 200;
+
+	/**
+	 * Maximal interval between two progress events, in milliseconds.
+	 */
+	private static final long MAX_PROGRESS_INTERVAL = DateUtils.MILLIS_PER_MINUTE;
+
+	/**
+	 * Maximal interval without any data sent to a progress stream, in milliseconds.
+	 */
+	private static final long PROGRESS_HEARTBEAT = 15 * DateUtils.MILLIS_PER_SECOND;
+
+	/**
+	 * Maximal duration of a progress stream, in milliseconds. The client reconnects to get the next events.
+	 */
+	private static final long MAX_PROGRESS_DURATION = 5 * DateUtils.MILLIS_PER_MINUTE;
+
+	/**
+	 * Maximal amount of concurrent progress streams. Each stream holds a container thread until it is closed.
+	 */
+	protected static final int MAX_PROGRESS_STREAMS = 16;
+
+	/**
+	 * The available progress streams, shared by all batch resources.
+	 */
+	private static final Semaphore PROGRESS_STREAMS = new Semaphore(MAX_PROGRESS_STREAMS);
+
+	/**
+	 * Delay between two checks of the interrupted tasks to resume, in milliseconds.
+	 */
+	private static final long RESUME_DELAY = 5 * DateUtils.MILLIS_PER_MINUTE;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * The last public identifier of a task. Shared by all the resources, since the stored tasks are unique by principal
+	 * and identifier.
+	 */
+	private static final AtomicLong LAST_ID = new AtomicLong();
+
 	@Autowired
 	protected TaskExecutor executor;
 
+	@Autowired
+	private BatchExecutor batchExecutor;
+
+	@Autowired
+	private BatchTelemetry telemetry;
+
+	@Autowired
+	private BatchWindows windows;
+
 	@Autowired
 	private CsvForBean csvForBean;
 
@@ -47,9 +241,21 @@ public abstract class AbstractBatchResource {
 	 */
 	private final Map<String, BatchTaskVo<?>> imports = new ConcurrentHashMap<>();
 
+	/**
+	 * Identifier of the task of each deduplicated submission. Key is built from the user name, the task type, the
+	 * dry-run mode and the idempotency key or the content hash. Released with the task.
+	 */
+	private final Map<String, Long> submissions = new ConcurrentHashMap<>();
+
 	@Autowired
 	private ValidatorBean validator;
 
+	@Autowired
+	private BatchTaskStore store;
+
+	@Autowired
+	private PaginationJson paginationJson;
+
 	/**
 	 * Return the import task from its identifier. The internal identifier is build from the current user and the formal
 	 * identifier parameter.
@@ -62,7 +268,109 @@ public abstract class AbstractBatchResource {
 	@Path("{id:\\d+}")
 	@OnNullReturn404
 	public BatchTaskVo<? extends BatchElement> getImportTask(@PathParam("id") final long id) {
-		return imports.get(SecurityContextHolder.getContext().getAuthentication().getName() + "-" + id);
+		final String principal = SecurityContextHolder.getContext().getAuthentication().getName();
+		return Optional.<BatchTaskVo<? extends BatchElement>> ofNullable(imports.get(principal + "-" + id))
+				.orElseGet(() -> store.findTask(principal, id));
+	}
+
+	/**
+	 * Return the entries of the given task. Once the task is completed, the entries are read from the persistent store.
+	 * 
+	 * @param id
+	 *            Identifier of the task.
+	 * @param status
+	 *            The optional status to filter. When <code>null</code>, all entries are returned.
+	 * @param uriInfo
+	 *            filter data.
+	 * @return The entries or <code>null</code> when no task matches.
+	 */
+	@GET
+	@Path("{id:\\d+}/entries")
+	@OnNullReturn404
+	public TableItem<BatchElement> getImportEntries(@PathParam("id") final long id, @QueryParam("status") final Boolean status,
+			@Context final UriInfo uriInfo) {
+		final BatchTaskVo<? extends BatchElement> task = getImportTask(id);
+		if (task == null) {
+			return null;
+		}
+		final PageRequest page = paginationJson.getPageRequest(uriInfo, ORDERED_COLUMNS);
+		final Page<BatchElement> entries;
+		if (task.isStored()) {
+			entries = store.findEntries(task.getPrincipal(), id, status, page);
+		} else {
+			// Running task, the entries are in memory
+			final List<BatchElement> filtered = task.getEntries().stream().filter(e -> status == null || status.equals(e.getStatus()))
+					.collect(Collectors.toList());
+			final int from = (int) Math.min(page.getOffset(), filtered.size());
+			entries = new PageImpl<>(filtered.subList(from, Math.min(from + page.getPageSize(), filtered.size())), page, filtered.size());
+		}
+		return paginationJson.applyPagination(uriInfo, entries, Function.identity());
+	}
+
+	/**
+	 * Export the failed entries of the given task as CSV, so they can be fixed and submitted again. The columns are the
+	 * uploaded ones in the same order, followed by the status text. As for the uploads, there is no header row.
+	 * 
+	 * @param id
+	 *            Identifier of the task.
+	 * @return The CSV stream or <code>null</code> when no task matches.
+	 */
+	@GET
+	@Path("{id:\\d+}/failures.csv")
+	@Produces(CSV)
+	@OnNullReturn404
+	public StreamingOutput getImportFailures(@PathParam("id") final long id) {
+		final BatchTaskVo<? extends BatchElement> task = getImportTask(id);
+		if (task == null) {
+			return null;
+		}
+		return output -> {
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+			if (task.isStored()) {
+				// Completed task, the failures are read from the persistent store by chunk
+				Page<BatchElement> failures = null;
+				for (int page = 0; failures == null || failures.hasNext(); page++) {
+					failures = store.findEntries(task.getPrincipal(), id, Boolean.FALSE, PageRequest.of(page, EXPORT_CHUNK));
+					writeCsv(writer, task.getColumns(), failures.getContent());
+				}
+			} else {
+				// Running task, the entries are in memory
+				writeCsv(writer, task.getColumns(),
+						task.getEntries().stream().filter(e -> Boolean.FALSE.equals(e.getStatus())).collect(Collectors.toList()));
+			}
+			writer.flush();
+		};
+	}
+
+	/**
+	 * Write the given entries as CSV rows : the values of the given columns, then the status text. When there is no
+	 * column, all the uploadable properties are written.
+	 */
+	private void writeCsv(final Writer writer, final String[] columns, final List<? extends BatchElement> entries) throws IOException {
+		for (final BatchElement entry : entries) {
+			@SuppressWarnings("unchecked")
+			final Map<String, Object> values = MAPPER.convertValue(entry, Map.class);
+			final String[] safeColumns = columns == null
+					? values.keySet().stream().filter(p -> !ArrayUtils.contains(STATUS_PROPERTIES, p)).toArray(String[]::new)
+					: columns;
+			for (final String column : safeColumns) {
+				writer.write(toCsv(values.get(column)));
+				writer.write(';');
+			}
+			writer.write(toCsv(entry.getStatusText()));
+			writer.write('\n');
+		}
+	}
+
+	/**
+	 * Return the CSV form of a value, quoted when needed.
+	 */
+	private String toCsv(final Object value) {
+		final String raw = value instanceof Collection ? StringUtils.join((Collection<?>) value, ',') : Objects.toString(value, "");
+		if (StringUtils.containsAny(raw, ';', '"', '\n', '\r')) {
+			return '"' + raw.replace("\"", "\"\"") + '"';
+		}
+		return raw;
 	}
 
 	/**
@@ -79,14 +387,201 @@ public abstract class AbstractBatchResource {
 		return Optional.ofNullable(getImportTask(id)).map(BatchTaskVo::getStatus).orElse(null);
 	}
 
+	/**
+	 * Return the metrics of the given task.
+	 * 
+	 * @param id
+	 *            Identifier of the task.
+	 * @return The metrics or <code>null</code> when no task matches.
+	 */
+	@GET
+	@Path("{id:\\d+}/metrics")
+	@OnNullReturn404
+	public BatchMetrics getImportMetrics(@PathParam("id") final long id) {
+		return Optional.ofNullable(getImportStatus(id)).map(ImportStatus::getMetrics).orElse(null);
+	}
+
+	/**
+	 * Return the metrics of all batch tasks since the startup.
+	 * 
+	 * @return The global metrics.
+	 */
+	@GET
+	@Path("metrics")
+	public BatchMetrics getMetrics() {
+		return telemetry.getGlobal();
+	}
+
+	/**
+	 * Return the queued tasks of the current user, waiting for their scheduled time.
+	 * 
+	 * @return The status of the queued tasks, ordered by scheduled time. Key is the task identifier.
+	 */
+	@GET
+	@Path("queue")
+	public Map<Long, ImportStatus> getQueue() {
+		final String principal = SecurityContextHolder.getContext().getAuthentication().getName();
+		return imports.values().stream().filter(t -> principal.equals(t.getPrincipal()) && t.getStatus().getState() == ImportState.QUEUED)
+				.sorted(Comparator.comparing(t -> t.getStatus().getNotBefore()))
+				.collect(Collectors.toMap(BatchTaskVo::getId, BatchTaskVo::getStatus, (a, b) -> a, LinkedHashMap::new));
+	}
+
+	/**
+	 * Cancel the given task. The entries being proceeded are completed, the remaining ones are not proceeded. A task
+	 * canceled while its upload is parsed is not started.
+	 * 
+	 * @param id
+	 *            Identifier of the task.
+	 * @return The updated status or <code>null</code> when no task matches.
+	 */
+	@PUT
+	@Path("{id:\\d+}/cancel")
+	@OnNullReturn404
+	public ImportStatus cancel(@PathParam("id") final long id) {
+		return updateState(id, ImportState.CANCELED, ImportState.PARSING, ImportState.QUEUED, ImportState.RUNNING, ImportState.PAUSED);
+	}
+
+	/**
+	 * Pause the given task. The entries being proceeded are completed, the remaining ones wait for the task to be
+	 * resumed.
+	 * 
+	 * @param id
+	 *            Identifier of the task.
+	 * @return The updated status or <code>null</code> when no task matches.
+	 */
+	@PUT
+	@Path("{id:\\d+}/pause")
+	@OnNullReturn404
+	public ImportStatus pause(@PathParam("id") final long id) {
+		return updateState(id, ImportState.PAUSED, ImportState.RUNNING);
+	}
+
+	/**
+	 * Resume the given paused task.
+	 * 
+	 * @param id
+	 *            Identifier of the task.
+	 * @return The updated status or <code>null</code> when no task matches.
+	 */
+	@PUT
+	@Path("{id:\\d+}/resume")
+	@OnNullReturn404
+	public ImportStatus resume(@PathParam("id") final long id) {
+		return updateState(id, ImportState.RUNNING, ImportState.PAUSED);
+	}
+
+	/**
+	 * Change the state of a task of the current user. The task must be in one of the accepted states.
+	 */
+	private ImportStatus updateState(final long id, final ImportState state, final ImportState... accepted) {
+		final ImportStatus status = Optional.ofNullable(imports.get(SecurityContextHolder.getContext().getAuthentication().getName() + "-" + id))
+				.map(BatchTaskVo::getStatus).orElse(null);
+		if (status != null) {
+			synchronized (status) {
+				if (!ArrayUtils.contains(accepted, status.getState())) {
+					throw new BusinessException("invalid-state", status.getState(), state);
+				}
+				status.setState(state);
+			}
+		}
+		return status;
+	}
+
+	/**
+	 * Stream the progress of the given task as server-sent events. An event is sent when the progress changes, at most
+	 * once per interval, and a comment is sent when there is no change for a while, so a closed client is detected.
+	 * The stream is closed when the task is completed, or after a bounded duration, the client then reconnects to get
+	 * the next events. The stream of a queued task is closed right away, and the client reconnects at the scheduled
+	 * time. The amount of concurrent streams is limited, since each one holds a container thread.
+	 * 
+	 * @param id
+	 *            Identifier of the task.
+	 * @param interval
+	 *            The minimal interval between two events, in milliseconds.
+	 * @return The event stream or <code>null</code> when no task matches.
+	 */
+	@GET
+	@Path("{id:\\d+}/progress")
+	@Produces(SERVER_SENT_EVENTS)
+	@OnNullReturn404
+	public StreamingOutput getImportProgress(@PathParam("id") final long id,
+			@QueryParam("interval") @DefaultValue("1000") final long interval) {
+		final BatchTaskVo<? extends BatchElement> task = getImportTask(id);
+		if (task == null) {
+			return null;
+		}
+		if (!PROGRESS_STREAMS.tryAcquire()) {
+			// The client polls the status instead
+			throw new BusinessException("too-many-streams", MAX_PROGRESS_STREAMS);
+		}
+		final long safeInterval = Math.min(Math.max(interval, MIN_PROGRESS_INTERVAL), MAX_PROGRESS_INTERVAL);
+		return output -> {
+			try {
+				writeProgress(task, output, safeInterval);
+			} finally {
+				PROGRESS_STREAMS.release();
+			}
+		};
+	}
+
+	/**
+	 * Write the progress events of the given task until it is completed, or the stream duration is reached.
+	 */
+	private void writeProgress(final BatchTaskVo<? extends BatchElement> task, final OutputStream output, final long safeInterval)
+			throws IOException {
+		final Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+		final long deadline = System.currentTimeMillis() + MAX_PROGRESS_DURATION;
+		long lastWrite = 0;
+		ImportProgress previous = null;
+		boolean completed;
+		do {
+			completed = task.getStatus().getEnd() != null;
+			final long now = System.currentTimeMillis();
+			final ImportProgress progress = new ImportProgress(task.getStatus(), now);
+			if (progress.isChanged(previous)) {
+				// Push this delta
+				writer.write("event: progress\ndata: " + MAPPER.writeValueAsString(progress) + "\n\n");
+				previous = progress;
+				lastWrite = now;
+			} else if (now - lastWrite >= PROGRESS_HEARTBEAT) {
+				// Fails when the client is gone, and keeps the connection open through the proxies
+				writer.write(":\n\n");
+				lastWrite = now;
+			}
+			if (progress.getState() == ImportState.QUEUED) {
+				// Do not hold the connection until the scheduled time
+				writer.write("retry: " + Math.min(Math.max(task.getStatus().getNotBefore().getTime() - now, safeInterval), MAX_PROGRESS_DURATION)
+						+ "\n\n");
+				completed = true;
+			}
+			writer.flush();
+		} while (!completed && System.currentTimeMillis() < deadline && sleep(safeInterval));
+	}
+
+	/**
+	 * Wait the given time.
+	 * 
+	 * @return <code>false</code> when the wait has been interrupted.
+	 */
+	private boolean sleep(final long millis) {
+		try {
+			Thread.sleep(millis);
+			return true;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
 	/**
 	 * Cleanup the previous tasks.
 	 */
 	private void cleanup() {
 		for (final Entry<String, BatchTaskVo<?>> entry : imports.entrySet()) {
 			if (isFinished(entry.getValue())) {
-				// This task is finished since yesterday
+				// This task is finished since yesterday, it remains available from the store
 				imports.remove(entry.getKey());
+				unregister(entry.getValue());
 			}
 		}
 	}
@@ -98,48 +593,668 @@ public abstract class AbstractBatchResource {
 		return task.getStatus().getEnd() != null && task.getStatus().getEnd().getTime() + DateUtils.MILLIS_PER_DAY < System.currentTimeMillis();
 	}
 
+	/**
+	 * Parse, validate and schedule the entries of the uploaded file. The format is detected from the first significant
+	 * character: a JSON array or a sequence of JSON objects such as NDJSON, otherwise CSV. The file may be compressed
+	 * with gzip or zip. In background or streaming mode, the file is spooled to a temporary file and parsed apart from
+	 * the request thread : the parsing errors are then reported by the status of the task.
+	 * <p>
+	 * A submission having the same idempotency key, or the same content when deduplicated, as a previous task of the
+	 * current user returns the identifier of this task instead of starting a new one.
+	 * 
+	 * @param uploadedFile
+	 *            Entries file to import, in CSV, JSON or NDJSON format, optionally compressed.
+	 * @param columns
+	 *            The CSV header names. When empty, the default ones are used. Ignored for JSON, the properties are named.
+	 * @param encoding
+	 *            CSV encoding. Default is UTF-8. Ignored for JSON, the encoding is detected.
+	 * @param defaultColumns
+	 *            The default and accepted CSV header names.
+	 * @param batchType
+	 *            The batch element type.
+	 * @param taskType
+	 *            The task type processing the entries.
+	 * @param options
+	 *            The submission options.
+	 * @param <B>
+	 *            The batch element type.
+	 * @param <T>
+	 *            The task type.
+	 * @return The public identifier of the scheduled task.
+	 * @throws IOException
+	 *             When the uploaded file cannot be read.
+	 */
 	protected <B extends BatchElement, T extends AbstractLdapBatchTask<B>> long batch(final InputStream uploadedFile, final String[] columns,
-			final String encoding, final String[] defaultColumns, final Class<B> batchType, final Class<T> taskType) throws IOException {
+			final String encoding, final String[] defaultColumns, final Class<B> batchType, final Class<T> taskType, final BatchOptions options)
+			throws IOException {
+		final BatchTaskVo<B> importTask = newTask(options);
+		if (options.isStreaming() && importTask.getStatus().getNotBefore() != null) {
+			// The upload would be held until the scheduled time
+			throw new ValidationJsonException("streaming", "queued-streaming");
+		}
+
+		// A streamed upload is read while the entries are proceeded, so always apart from the request thread
+		final boolean background = options.isBackground() || options.isStreaming();
+		final boolean spooled = background || options.isDeduplicate();
+		final MessageDigest digest = newDigest();
+		final Path file = spooled ? spool(uploadedFile, digest) : null;
+		boolean parsing = false;
+		boolean exposed = false;
+		try {
+			// The content hash also covers the way the content is read
+			digest.update((Arrays.toString(columns) + encoding).getBytes(StandardCharsets.UTF_8));
+			final String hash = options.isDeduplicate() ? Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()) : null;
+			if (background || hash != null || StringUtils.isNotBlank(options.getIdempotencyKey())) {
+				// Exposed while parsing, so the same submission sent meanwhile gets a known task
+				expose(importTask);
+				exposed = true;
+			}
+			final Long previous = register(importTask, taskType, options, hash);
+			if (previous != null) {
+				// Same submission as a previous task, nothing is proceeded again
+				imports.remove(importTask.getPrincipal() + "-" + importTask.getId(), importTask);
+				exposed = false;
+				log.info("Task {} of {} is already submitted", previous, importTask.getPrincipal());
+				return previous;
+			}
+			if (background) {
+				parse(file, columns, encoding, defaultColumns, batchType, taskType, importTask);
+				parsing = true;
+			} else if (spooled) {
+				try (InputStream input = Files.newInputStream(file)) {
+					parse(input, file, columns, encoding, defaultColumns, batchType, taskType, importTask);
+				}
+			} else {
+				parse(uploadedFile, null, columns, encoding, defaultColumns, batchType, taskType, importTask);
+			}
+			return importTask.getId();
+		} catch (final IOException | RuntimeException e) {
+			// Rejected submission, it may be sent again
+			if (exposed) {
+				fail(importTask, e);
+			} else {
+				unregister(importTask);
+			}
+			throw e;
+		} finally {
+			if (spooled && !parsing) {
+				delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Parse the spooled upload apart from the request thread. The spooled file is deleted once parsed.
+	 */
+	private <B extends BatchElement, T extends AbstractLdapBatchTask<B>> void parse(final Path file, final String[] columns,
+			final String encoding, final String[] defaultColumns, final Class<B> batchType, final Class<T> taskType,
+			final BatchTaskVo<B> importTask) {
+		batchExecutor.parse(() -> {
+			try (InputStream input = Files.newInputStream(file)) {
+				parse(input, file, columns, encoding, defaultColumns, batchType, taskType, importTask);
+			} catch (final IOException | RuntimeException e) {
+				log.warn("Unable to parse the upload of the task {} of {}", importTask.getId(), importTask.getPrincipal(), e);
+				fail(importTask, e);
+			} finally {
+				delete(file);
+			}
+		});
+	}
+
+	/**
+	 * Expose the given task while its upload is parsed.
+	 */
+	private void expose(final BatchTaskVo<?> importTask) {
+		importTask.getStatus().setState(ImportState.PARSING);
+		imports.put(importTask.getPrincipal() + "-" + importTask.getId(), importTask);
+	}
+
+	/**
+	 * Complete an exposed task whose upload cannot be read, or is invalid : nothing is proceeded, and the same
+	 * submission is accepted again.
+	 */
+	private void fail(final BatchTaskVo<?> importTask, final Exception error) {
+		unregister(importTask);
+		synchronized (importTask.getStatus()) {
+			importTask.getStatus().setError(error.getMessage());
+			importTask.getStatus().setStatus(false);
+			importTask.getStatus().setEnd(new Date());
+			importTask.getStatus().setState(ImportState.CANCELED);
+		}
+	}
+
+	/**
+	 * Register the submission of the given task, identified by the idempotency key, or by the content hash.
+	 * 
+	 * @return The identifier of the previous task having the same submission, or <code>null</code> when the given
+	 *         task is the first one. A canceled task is not returned.
+	 */
+	private Long register(final BatchTaskVo<?> importTask, final Class<?> taskType, final BatchOptions options, final String hash) {
+		final String key = StringUtils.defaultIfBlank(options.getIdempotencyKey(), hash);
+		if (key == null) {
+			// Not deduplicated
+			return null;
+		}
+		final String principal = importTask.getPrincipal();
+		importTask.setSubmission(String.join("-", principal, taskType.getName(), String.valueOf(importTask.isDryRun()), key));
+		final long id = importTask.getId();
+		final long result = submissions.merge(importTask.getSubmission(), id, (p, n) -> isCanceled(principal, p) ? n : p);
+		return result == id ? null : result;
+	}
+
+	/**
+	 * Forget the submission of the given task, so the same submission is accepted again.
+	 */
+	private void unregister(final BatchTaskVo<?> importTask) {
+		if (importTask.getSubmission() != null) {
+			submissions.remove(importTask.getSubmission(), importTask.getId());
+		}
+	}
+
+	/**
+	 * Is the given task canceled. A task being parsed is exposed, and is not canceled until its upload is rejected.
+	 */
+	private boolean isCanceled(final String principal, final long id) {
+		return Optional.ofNullable(imports.get(principal + "-" + id)).map(t -> t.getStatus().getState() == ImportState.CANCELED).orElse(false);
+	}
+
+	/**
+	 * Return a new digest of the uploaded content.
+	 */
+	private MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			// Every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Copy the uploaded file to a temporary file, and update the given digest with the copied content.
+	 */
+	private Path spool(final InputStream uploadedFile, final MessageDigest digest) throws IOException {
+		return spool(new DigestInputStream(uploadedFile, digest), (Charset) null);
+	}
 
-		// Public identifier is based on system date
-		final long id = System.currentTimeMillis();
+	/**
+	 * Copy the given content to a temporary file. When a charset is given, the content is written in UTF-8.
+	 */
+	private Path spool(final InputStream input, final Charset charset) throws IOException {
+		final Path file = Files.createTempFile("id-batch-", ".upload");
+		try {
+			if (charset == null) {
+				Files.copy(input, file, StandardCopyOption.REPLACE_EXISTING);
+			} else {
+				final Reader reader = new InputStreamReader(input, charset);
+				final char[] buffer = new char[BUFFER_SIZE];
+				try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+					for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+						writer.write(buffer, 0, read);
+					}
+				}
+			}
+		} catch (final IOException e) {
+			delete(file);
+			throw e;
+		}
+		return file;
+	}
+
+	/**
+	 * Delete a spooled file.
+	 */
+	private void delete(final Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (final IOException e) {
+			log.warn("Unable to delete the spooled file {}", file, e);
+		}
+	}
+
+	/**
+	 * Parse, validate and schedule the entries of the uploaded file.
+	 * 
+	 * @param file
+	 *            The spooled file read by the given input. <code>null</code> when the upload is not spooled.
+	 */
+	private <B extends BatchElement, T extends AbstractLdapBatchTask<B>> void parse(final InputStream uploadedFile, final Path file,
+			final String[] columns, final String encoding, final String[] defaultColumns, final Class<B> batchType, final Class<T> taskType,
+			final BatchTaskVo<B> importTask) throws IOException {
+		final BufferedInputStream buffered = new BufferedInputStream(uploadedFile);
+		final BufferedInputStream input = decompress(buffered);
+		if (isJson(input)) {
+			// No header to stitch, the properties are read as they come
+			importTask.setColumns(defaultColumns);
+			json(MAPPER.readerFor(batchType).with(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY).readValues(input), taskType, importTask);
+			return;
+		}
 
 		// Check column's name validity
 		final String[] sanitizeColumns = ArrayUtils.isEmpty(columns) ? defaultColumns : columns;
 		checkHeaders(defaultColumns, sanitizeColumns);
+		final String[] trimmedColumns = Arrays.stream(sanitizeColumns).map(String::trim).toArray(String[]::new);
+		final String safeEncoding = ObjectUtils.defaultIfNull(encoding, StandardCharsets.UTF_8.name());
+		importTask.setColumns(trimmedColumns);
+
+		if (importTask.isStreaming()) {
+			// Proceed the entries as they are read
+			stream(new CsvBeanReader<>(new InputStreamReader(input, safeEncoding), batchType, trimmedColumns)::read, taskType, importTask);
+			return;
+		}
 
 		// Build CSV header from array
 		final String csvHeaders = StringUtils.chop(ArrayUtils.toString(sanitizeColumns)).substring(1).replace(',', ';') + "\n";
 
-		// Build entries
-		final List<B> entries = csvForBean.toBean(batchType,
-				new InputStreamReader(new SequenceInputStream(
-						new ByteArrayInputStream(csvHeaders.getBytes(ObjectUtils.defaultIfNull(encoding, StandardCharsets.UTF_8.name()))),
-						uploadedFile), ObjectUtils.defaultIfNull(encoding, StandardCharsets.UTF_8.name())));
+		// The records are split by their position in a file, so the content is only read by the chunk parsers
+		final Charset charset = Charset.forName(safeEncoding);
+		final boolean ascii = isAsciiCompatible(charset);
+		final Path csv = file != null && input == buffered && ascii ? file : spool(input, ascii ? null : charset);
+		try {
+			parse(csv, ascii ? charset : StandardCharsets.UTF_8, csvHeaders, batchType, taskType, importTask);
+		} finally {
+			if (!csv.equals(file)) {
+				delete(csv);
+			}
+		}
+	}
+
+	/**
+	 * Indicate the line feeds and the quotes are encoded as in ASCII, so the records can be split from the bytes.
+	 */
+	private boolean isAsciiCompatible(final Charset charset) {
+		return Arrays.equals("\n\";".getBytes(charset), new byte[] { '\n', '"', ';' });
+	}
+
+	/**
+	 * Build and validate the entries of a CSV file by chunks of {@value #PARSE_CHUNK} records, in parallel. All the
+	 * invalid entries are reported at once, with their line number in the uploaded file.
+	 */
+	private <B extends BatchElement, T extends AbstractLdapBatchTask<B>> void parse(final Path csv, final Charset charset, final String csvHeaders,
+			final Class<B> batchType, final Class<T> taskType, final BatchTaskVo<B> importTask) throws IOException {
+		final Map<B, ConstraintViolationException> rejected = Collections.synchronizedMap(new IdentityHashMap<>());
+		final Map<Integer, ConstraintViolationException> invalid = new ConcurrentSkipListMap<>();
+		final List<List<B>> chunks = batchExecutor.parseAll(BatchChunk.split(csv, PARSE_CHUNK).stream()
+				.map(c -> (Callable<List<B>>) () -> parse(csv, charset, c, csvHeaders, batchType, importTask, rejected, invalid))
+				.collect(Collectors.toList()));
+		if (!invalid.isEmpty()) {
+			final Set<ConstraintViolation<?>> violations = new LinkedHashSet<>();
+			invalid.values().forEach(e -> violations.addAll(e.getConstraintViolations()));
+			throw new ConstraintViolationException(
+					invalid.values().stream().limit(MAX_REPORTED).map(Throwable::getMessage).collect(Collectors.joining("\n")), violations);
+		}
+
+		// Schedule the import
+		importTask.setEntries(chunks.stream().flatMap(List::stream).collect(Collectors.toList()));
+		start(importTask, taskType, rejected);
+	}
+
+	/**
+	 * Parse and validate a chunk of CSV records. An invalid entry is added to the invalid ones with its line number in
+	 * the uploaded file. In dry-run mode, the invalid entries are kept and added to the rejected ones.
+	 */
+	private <B extends BatchElement> List<B> parse(final Path csv, final Charset charset, final BatchChunk chunk, final String csvHeaders,
+			final Class<B> batchType, final BatchTaskVo<B> importTask, final Map<B, ConstraintViolationException> rejected,
+			final Map<Integer, ConstraintViolationException> invalid) throws IOException {
+		final List<B> entries = csvForBean.toBean(batchType, new StringReader(csvHeaders + chunk.read(csv, charset)));
+		final long start = System.nanoTime();
+		try {
+			for (int i = 0; i < entries.size(); i++) {
+				if (entries.get(i) != null) {
+					final int line = chunk.getLines().get(i);
+					try {
+						validate(importTask, entries.get(i), "line " + line, rejected);
+					} catch (final ConstraintViolationException e) {
+						invalid.put(line, e);
+					}
+				}
+			}
+		} finally {
+			addValidation(importTask, System.nanoTime() - start);
+		}
 		entries.removeIf(Objects::isNull);
+		return entries;
+	}
 
-		// Validate them
-		validator.validateCheck(entries);
+	/**
+	 * Validate an entry read at the given position, such as "line 2". In dry-run mode, an invalid entry is added to the
+	 * rejected ones.
+	 */
+	private <B extends BatchElement> void validate(final BatchTaskVo<B> importTask, final B entry, final String position,
+			final Map<B, ConstraintViolationException> rejected) {
+		try {
+			validator.validateCheck(entry);
+		} catch (final ConstraintViolationException e) {
+			final ConstraintViolationException error = new ConstraintViolationException("Invalid entry at " + position + " : " + e.getMessage(),
+					e.getConstraintViolations());
+			if (!importTask.isDryRun()) {
+				throw error;
+			}
+			rejected.put(entry, error);
+		}
+	}
 
-		// Clone the context for the asynchronous import
-		final BatchTaskVo<B> importTask = new BatchTaskVo<>();
+	/**
+	 * Return the decompressed stream of a gzip or zip input, detected from its magic bytes. For a zip input, the first
+	 * file is read. Otherwise, the given input is returned. The decompression is done as the entries are read.
+	 */
+	private BufferedInputStream decompress(final BufferedInputStream input) throws IOException {
+		input.mark(ZIP_MAGIC.length);
+		final int[] magic = new int[ZIP_MAGIC.length];
+		for (int i = 0; i < magic.length; i++) {
+			magic[i] = input.read();
+		}
+		input.reset();
+		if (magic[0] == GZIP_MAGIC[0] && magic[1] == GZIP_MAGIC[1]) {
+			return new BufferedInputStream(new GZIPInputStream(input));
+		}
+		if (Arrays.equals(magic, ZIP_MAGIC)) {
+			final ZipInputStream zip = new ZipInputStream(input);
+			ZipEntry entry = zip.getNextEntry();
+			while (entry != null && entry.isDirectory()) {
+				// Skip the directories
+				entry = zip.getNextEntry();
+			}
+			return new BufferedInputStream(zip);
+		}
+		return input;
+	}
+
+	/**
+	 * Indicate the given input is JSON from its first significant byte. The input is not consumed.
+	 */
+	private boolean isJson(final BufferedInputStream input) throws IOException {
+		input.mark(MAX_PEEK);
+		try {
+			int next = input.read();
+			for (int read = 1; read < MAX_PEEK && (Character.isWhitespace(next) || ArrayUtils.contains(BOM, next)); read++) {
+				next = input.read();
+			}
+			return next == '{' || next == '[';
+		} finally {
+			input.reset();
+		}
+	}
+
+	/**
+	 * Parse, validate and schedule the JSON entries. An unknown property, or a status property, is rejected as an
+	 * invalid CSV header would be. The multi-valued attributes are arrays, a single value is also accepted.
+	 */
+	private <B extends BatchElement, T extends AbstractLdapBatchTask<B>> void json(final MappingIterator<B> iterator, final Class<T> taskType,
+			final BatchTaskVo<B> importTask) throws IOException {
+		try {
+			if (importTask.isStreaming()) {
+				stream(() -> next(iterator), taskType, importTask);
+			} else {
+				final List<B> entries = iterator.readAll();
+				entries.stream().filter(Objects::nonNull).forEach(this::checkUploaded);
+				validateAndSchedule(entries, taskType, importTask);
+			}
+		} catch (final UnrecognizedPropertyException e) {
+			throw new BusinessException("Invalid header", e.getPropertyName());
+		}
+	}
+
+	/**
+	 * Return the next not <code>null</code> JSON entry, or <code>null</code> when there is no more entry.
+	 */
+	private <B> B next(final MappingIterator<B> iterator) throws IOException {
+		while (iterator.hasNextValue()) {
+			final B entry = iterator.nextValue();
+			if (entry != null) {
+				checkUploaded(entry);
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Check the given uploaded entry has no status property, only set by the processing.
+	 */
+	private void checkUploaded(final BatchElement entry) {
+		final Object[] values = { entry.getStatus(), entry.getStatusText(), entry.getError() };
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				throw new BusinessException("Invalid header", STATUS_PROPERTIES[i]);
+			}
+		}
+	}
+
+	/**
+	 * Validate all the entries, then schedule them. In dry-run mode, the invalid entries are rejected one by one.
+	 */
+	private <B extends BatchElement, T extends AbstractLdapBatchTask<B>> void validateAndSchedule(final List<B> entries, final Class<T> taskType,
+			final BatchTaskVo<B> importTask) {
+		entries.removeIf(Objects::isNull);
+		final long start = System.nanoTime();
+		final Map<B, ConstraintViolationException> rejected = new IdentityHashMap<>();
+		if (importTask.isDryRun()) {
+			for (int i = 0; i < entries.size(); i++) {
+				validate(importTask, entries.get(i), "entry " + (i + 1), rejected);
+			}
+		} else {
+			validator.validateCheck(entries);
+		}
+		addValidation(importTask, System.nanoTime() - start);
+
+		// Schedule the import
+		importTask.setEntries(entries);
+		start(importTask, taskType, rejected);
+	}
+
+	/**
+	 * Schedule a task processing the given entries in background. The progress is available with
+	 * {@link #getImportStatus(long)}.
+	 * 
+	 * @param entries
+	 *            The validated entries to proceed.
+	 * @param taskType
+	 *            The task type processing the entries.
+	 * @param options
+	 *            The submission options.
+	 * @param <B>
+	 *            The batch element type.
+	 * @param <T>
+	 *            The task type.
+	 * @return The public identifier of the scheduled task.
+	 */
+	protected <B extends BatchElement, T extends AbstractLdapBatchTask<B>> long schedule(final List<B> entries, final Class<T> taskType,
+			final BatchOptions options) {
+		final BatchTaskVo<B> importTask = newTask(options);
 		importTask.setEntries(entries);
+		start(importTask, taskType);
+		return importTask.getId();
+	}
+
+	/**
+	 * Schedule a task processing the entries as they are read. The entries are validated by chunk, the invalid ones are
+	 * rejected without stopping the import. Only the failed entries are kept in memory.
+	 */
+	private <B extends BatchElement, T extends AbstractLdapBatchTask<B>> void stream(final EntryReader<B> reader, final Class<T> taskType,
+			final BatchTaskVo<B> importTask) throws IOException {
+		importTask.setEntries(new BatchFailures<>());
+
+		// The read entries are not kept, so this task cannot be resumed nor ordered
+		importTask.setResource(null);
+		importTask.setOrdered(false);
+		importTask.setFeed(new BatchFeed<>());
+		final T task = start(importTask, taskType);
+		try {
+			for (List<B> chunk = read(reader); !chunk.isEmpty() && !importTask.getFeed().isCanceled(); chunk = read(reader)) {
+				importTask.getStatus().setEntries(importTask.getStatus().getEntries() + chunk.size());
+				importTask.getFeed().offer(validate(importTask, task, chunk));
+			}
+		} finally {
+			// Let the task complete
+			importTask.getFeed().close();
+		}
+	}
+
+	/**
+	 * Read the next chunk of entries.
+	 */
+	private <B> List<B> read(final EntryReader<B> reader) throws IOException {
+		final List<B> chunk = new ArrayList<>(STREAMING_CHUNK);
+		for (B entry = reader.read(); entry != null; entry = reader.read()) {
+			chunk.add(entry);
+			if (chunk.size() == STREAMING_CHUNK) {
+				break;
+			}
+		}
+		return chunk;
+	}
+
+	/**
+	 * Validate a chunk of entries and return the valid ones. The invalid entries are rejected.
+	 */
+	private <B extends BatchElement> List<B> validate(final BatchTaskVo<B> importTask, final AbstractLdapBatchTask<B> task, final List<B> chunk) {
+		final long start = System.nanoTime();
+		try {
+			validator.validateCheck(chunk);
+			return chunk;
+		} catch (final ConstraintViolationException e) {
+			// Isolate the invalid entries
+			final List<B> valid = new ArrayList<>(chunk.size());
+			for (final B entry : chunk) {
+				try {
+					validator.validateCheck(entry);
+					valid.add(entry);
+				} catch (final ConstraintViolationException ce) {
+					task.reject(entry, ce);
+				}
+			}
+			return valid;
+		} finally {
+			addValidation(importTask, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Add time spent in validation to the metrics of the given task and to the global ones.
+	 */
+	private void addValidation(final BatchTaskVo<?> importTask, final long nanos) {
+		importTask.getStatus().getMetrics().addValidation(nanos);
+		telemetry.getGlobal().addValidation(nanos);
+	}
+
+	/**
+	 * Create a new task for the current user.
+	 */
+	private <B extends BatchElement> BatchTaskVo<B> newTask(final BatchOptions options) {
+		// Public identifier is based on system date, and is unique even when the tasks are created in the same millisecond
+		final BatchTaskVo<B> importTask = new BatchTaskVo<>();
+		importTask.setEntries(Collections.emptyList());
+		importTask.setStreaming(options.isStreaming());
+		importTask.setDryRun(options.isDryRun());
+		importTask.setOrdered(options.isOrdered());
+		importTask.setElastic(options.isElastic());
+		importTask.setResource(ClassUtils.getUserClass(this).getName());
+		if (options.getRate() > 0 || options.isAdaptive()) {
+			importTask.setBucket(new TokenBucket(options.getRate(), options.isAdaptive()));
+		}
+		importTask.setParallel(Math.min(Math.max(options.getParallel(), options.isDryRun() ? DRY_RUN_PARALLEL : 1),
+				options.isElastic() ? MAX_ELASTIC_PARALLEL : MAX_PARALLEL));
 		importTask.setPrincipal(SecurityContextHolder.getContext().getAuthentication().getName());
-		importTask.setId(id);
+		importTask.setId(LAST_ID.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis())));
+		if (options.getNotBefore() > 0 || options.getWindow() != null) {
+			// The processing is delayed to the scheduled time, within the window when requested
+			final long notBefore = Math.max(options.getNotBefore(), System.currentTimeMillis());
+			importTask.getStatus()
+					.setNotBefore(new Date(options.getWindow() == null ? notBefore : windows.getNext(options.getWindow(), notBefore)));
+		}
+		return importTask;
+	}
 
+	/**
+	 * Resume the tasks of this resource interrupted by a restart. Each task is resumed from its last checkpoint, the
+	 * entries proceeded before are not proceeded again. A task is only resumed by the node taking its ownership, once
+	 * its previous owner has stopped confirming it runs this task.
+	 */
+	@EventListener(ContextRefreshedEvent.class)
+	public void resume() {
+		for (final BatchTask entity : store.findInterrupted(ClassUtils.getUserClass(this).getName())) {
+			if (!store.claim(entity)) {
+				// Still running on another node, or already resumed
+				continue;
+			}
+			try {
+				@SuppressWarnings("unchecked")
+				final Class<AbstractLdapBatchTask<BatchElement>> taskType = (Class<AbstractLdapBatchTask<BatchElement>>) Class
+						.forName(entity.getHandler());
+				final BatchTaskVo<BatchElement> importTask = store.load(entity);
+				log.info("Resume the task {} of {} from the entry {}", importTask.getId(), importTask.getPrincipal(), importTask.getCheckpoint());
+				start(importTask, taskType);
+			} catch (final ClassNotFoundException | RuntimeException e) {
+				// This task stays interrupted
+				log.error("Unable to resume the task {} of {}", entity.getBatch(), entity.getPrincipal(), e);
+			}
+		}
+	}
+
+	/**
+	 * Schedule the periodic resume of the interrupted tasks : the ones of a stopped node, and the ones of this node
+	 * still confirmed by its previous run at startup.
+	 */
+	@PostConstruct
+	public void scheduleResume() {
+		batchExecutor.scheduleAtFixedRate(this::resume, RESUME_DELAY);
+	}
+
+	/**
+	 * Start and expose the given task.
+	 */
+	private <B extends BatchElement, T extends AbstractLdapBatchTask<B>> T start(final BatchTaskVo<B> importTask, final Class<T> taskType) {
+		return start(importTask, taskType, Collections.emptyMap());
+	}
+
+	/**
+	 * Start and expose the given task. The rejected entries are not proceeded.
+	 */
+	private <B extends BatchElement, T extends AbstractLdapBatchTask<B>> T start(final BatchTaskVo<B> importTask, final Class<T> taskType,
+			final Map<B, ConstraintViolationException> rejected) {
 		// Schedule the import
 		final T task = SpringUtils.getBean(taskType);
 		task.configure(importTask);
-		executor.execute(task);
+		rejected.forEach(task::reject);
+		if (importTask.getStatus().getState() == ImportState.QUEUED) {
+			// Persisted right away, so it stays queued after a restart
+			task.persist();
+			batchExecutor.schedule(() -> execute(importTask, task), importTask.getStatus().getNotBefore());
+			log.info("Task {} of {} is queued until {}", importTask.getId(), importTask.getPrincipal(), importTask.getStatus().getNotBefore());
+		} else {
+			execute(importTask, task);
+		}
 
 		// Also cleanup the previous tasks
 		cleanup();
 
 		// Expose the task with internal identifier, based on current user PLUS the public identifier
 		imports.put(importTask.getPrincipal() + "-" + importTask.getId(), importTask);
+		return task;
+	}
+
+	/**
+	 * Source of the entries read one by one.
+	 */
+	@FunctionalInterface
+	private interface EntryReader<B> {
+
+		/**
+		 * Return the next entry.
+		 */
+		B read() throws IOException;
+	}
 
-		// Return private task identifier
-		return id;
+	/**
+	 * Execute the given task on its executor.
+	 */
+	private void execute(final BatchTaskVo<?> importTask, final Runnable task) {
+		if (importTask.isElastic()) {
+			batchExecutor.execute(task);
+		} else {
+			executor.execute(task);
+		}
 	}
 
 	/**
@@ -1,19 +1,42 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import javax.validation.ConstraintViolationException;
+import javax.validation.ValidationException;
 import javax.ws.rs.ext.ExceptionMapper;
 
+import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.phase.PhaseInterceptorChain;
 import org.ligoj.app.api.Normalizer;
+import org.ligoj.bootstrap.core.resource.BusinessException;
 import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.util.ClassUtils;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -26,9 +49,81 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public abstract class AbstractLdapBatchTask<B extends BatchElement> implements Runnable { // NOPMD
 
+	/**
+	 * Maximal amount of entries waiting to be proceeded by a worker in parallel mode.
+	 */
+	private static final int PENDING_PER_WORKER = 100;
+
+	/**
+	 * Maximal amount of entries kept in memory once the task is completed and stored.
+	 */
+	private static final int KEPT_ENTRIES = 1000;
+
+	/**
+	 * Delay between two checks of the state of a paused task, in milliseconds.
+	 */
+	private static final long PAUSE_CHECK = 500;
+
+	/**
+	 * Minimal delay between two checkpoints of a running task, in milliseconds.
+	 */
+	private static final long CHECKPOINT_DELAY = 10000;
+
 	@Autowired
 	protected SecurityHelper securityHelper;
 
+	@Autowired
+	protected BatchTaskStore store;
+
+	@Autowired
+	protected BatchThrottle throttle;
+
+	@Autowired
+	protected BatchExecutor batchExecutor;
+
+	@Autowired
+	protected BatchTelemetry telemetry;
+
+	/**
+	 * Time spent in reads by the current thread, in nanoseconds. Used to split the time of a write operation.
+	 */
+	private static final ThreadLocal<long[]> READS = ThreadLocal.withInitial(() -> new long[1]);
+
+	/**
+	 * Pattern of a message usable as error key, such as "unknown-id" or "concurrency.lock".
+	 */
+	private static final Pattern ERROR_KEY = Pattern.compile("[\\w.-]{1,64}");
+
+	/**
+	 * The metrics to update : the ones of this task and the global ones.
+	 */
+	private List<BatchMetrics> metrics = Collections.emptyList();
+
+	/**
+	 * The import kind, such as "user-full".
+	 */
+	private String kind;
+
+	/**
+	 * Exception mappers by exception class. Empty when there is no mapper for a class.
+	 */
+	private final Map<Class<?>, Optional<ExceptionMapper<Throwable>>> mappers = new ConcurrentHashMap<>();
+
+	/**
+	 * Errors of the task by key and parameters.
+	 */
+	private final Map<String, BatchError> errors = new ConcurrentHashMap<>();
+
+	/**
+	 * The token buckets to go through before each write.
+	 */
+	private List<TokenBucket> buckets;
+
+	/**
+	 * Time of the last checkpoint, in milliseconds.
+	 */
+	private long lastCheckpoint;
+
 	protected ServerProviderFactory jaxrsFactory;
 
 	/**
@@ -36,18 +131,104 @@ public abstract class AbstractLdapBatchTask<B extends BatchElement> implements R
 	 */
 	protected BatchTaskVo<B> task;
 
+	/**
+	 * This task when it proceeds consecutive entries at once, otherwise <code>null</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	private final BatchCoalescer<B> coalescer = this instanceof BatchCoalescer ? (BatchCoalescer<B>) this : null;
+
+	/**
+	 * A write operation.
+	 */
+	@FunctionalInterface
+	private interface Operation {
+		void run() throws Exception; // NOSONAR Allow global error there
+	}
+
 	@Override
 	public void run() {
 		log.info("Executing " + task.toString());
+		boolean failed = true;
+		try {
+			// Expose the current user
+			securityHelper.setUserName(task.getPrincipal());
+			synchronized (task.getStatus()) {
+				if (task.getStatus().getState() == ImportState.CANCELED) {
+					// Canceled before being started, nothing is proceeded
+					failed = false;
+					return;
+				}
+				if (task.getStatus().getState() == ImportState.QUEUED) {
+					// The scheduled time is reached
+					task.getStatus().setStart(new Date());
+					task.getStatus().setState(ImportState.RUNNING);
+					task.getStatus().getMetrics().start();
+				}
+			}
 
-		// Expose the current user
-		securityHelper.setUserName(task.getPrincipal());
+			// Initial checkpoint, the task can be resumed after a restart
+			persist();
+			lastCheckpoint = System.currentTimeMillis();
 
-		doBatch();
+			prefetch();
+			doBatch();
+			failed = false;
+		} catch (final RuntimeException e) {
+			// The remaining entries are not proceeded
+			log.error("Import {} has failed", task.getId(), e);
+			task.getStatus().setError(e.getMessage());
+		} finally {
+			complete(failed);
+		}
+	}
+
+	/**
+	 * Complete this task, even after an unexpected failure, and persist its results.
+	 */
+	private void complete(final boolean failed) {
+		if (task.isStreaming()) {
+			// Release the reader of the remaining entries
+			task.getFeed().cancel();
+		}
 
 		// The import is completed
-		this.task.getStatus().setStatus(Boolean.TRUE);
+		final boolean canceled;
+		synchronized (task.getStatus()) {
+			canceled = failed || task.getStatus().getState() == ImportState.CANCELED;
+			task.getStatus().setState(canceled ? ImportState.CANCELED : ImportState.COMPLETED);
+		}
+		this.task.getStatus().setStatus(!canceled);
 		this.task.getStatus().setEnd(new Date());
+
+		// Persist the results, and release the memory of the large tasks
+		try {
+			store.save(task);
+			task.setStored(true);
+			if (task.getEntries().size() > KEPT_ENTRIES) {
+				task.setEntries(Collections.emptyList());
+			}
+		} catch (final RuntimeException e) {
+			// The results are still available in memory
+			log.error("Unable to store the results of {}", task, e);
+		}
+	}
+
+	/**
+	 * Persist this task and all its entries, so it can be resumed after a restart. Nothing is done when this task cannot
+	 * be resumed, or is already persisted such as a resumed one.
+	 */
+	public void persist() {
+		if (task.getResource() == null || task.isPersisted() || task.isResumed()) {
+			return;
+		}
+		try {
+			store.create(task, ClassUtils.getUserClass(this).getName());
+			task.setPersisted(true);
+		} catch (final RuntimeException e) {
+			// The task will not be resumed
+			log.error("Unable to checkpoint {}", task, e);
+			task.setResource(null);
+		}
 	}
 
 	/**
@@ -60,31 +241,536 @@ public abstract class AbstractLdapBatchTask<B extends BatchElement> implements R
 	 */
 	protected abstract void doBatch(B entry) throws Exception; // NOSONAR Allow global error there
 
+	/**
+	 * Check an entry could be proceeded, without any change. Used by the dry-run mode.
+	 * 
+	 * @param entry
+	 *            A batch entry.
+	 * @return The planned operation for this entry, such as "create" or "update".
+	 * @throws Exception
+	 *             Any error the processing of this entry would cause.
+	 */
+	protected abstract String plan(B entry) throws Exception; // NOSONAR Allow global error there
+
+	/**
+	 * Load at once the data the entries will read, before the first one is proceeded. Not called in streaming mode.
+	 * 
+	 * @param entries
+	 *            The entries to proceed.
+	 * @throws Exception
+	 *             Any error cause the entries to read their data one by one.
+	 */
+	protected void prefetch(final List<B> entries) throws Exception { // NOSONAR Allow global error there
+		// Nothing to prefetch by default
+	}
+
+	/**
+	 * Return the operation of the given entry, used to classify its latency.
+	 * 
+	 * @param entry
+	 *            A batch entry.
+	 * @return The operation name, such as "create".
+	 */
+	protected String getOperation(final B entry) {
+		return "proceed";
+	}
+
+	/**
+	 * Return the partition key of the given entry. Entries sharing the same key are proceeded in the order they are
+	 * read, by the same worker. Entries of distinct partitions may be proceeded concurrently in parallel mode.
+	 * 
+	 * @param entry
+	 *            A batch entry.
+	 * @return The partition key. May be <code>null</code>, the entries without key share the same partition.
+	 */
+	protected String getPartition(final B entry) {
+		return null;
+	}
+
+	/**
+	 * Release the state kept for the partition of the given entry, once proceeded. The entries read after it are not
+	 * ordered with it anymore.
+	 * 
+	 * @param entry
+	 *            A proceeded batch entry.
+	 */
+	protected void release(final B entry) {
+		// Nothing to release by default
+	}
+
+	/**
+	 * Split the entries into levels of dependency, parents first. Used by the ordered mode. The entries that cannot be
+	 * placed in a level, such as the ones involved in a cycle, must be rejected there.
+	 * 
+	 * @param entries
+	 *            The entries to proceed.
+	 * @return The levels. By default, there is no dependency between the entries : there is only one level.
+	 */
+	protected List<List<B>> toLevels(final List<B> entries) {
+		return Collections.singletonList(entries);
+	}
+
 	/**
 	 * Process the entries
 	 */
 	private void doBatch() {
-		for (final B importEntry : task.getEntries()) {
-			// Override previous status
-			importEntry.setStatus(null);
-			importEntry.setStatusText(null);
+		if (task.isOrdered()) {
+			// A level is completed before the next one
+			final List<B> remaining = new ArrayList<>();
+			getRemainingEntries().forEach(remaining::add);
+			for (final List<B> level : toLevels(remaining)) {
+				if (!awaitRunning()) {
+					break;
+				}
+				doBatch(coalesce(level), task.getParallel());
+			}
+			return;
+		}
+		final Iterable<List<B>> entries = coalesce(task.isStreaming() ? task.getFeed() : getRemainingEntries());
+		if (task.getParallel() > 1) {
+			doBatch(entries, task.getParallel());
+		} else {
+			for (final List<B> group : entries) {
+				if (!awaitRunning()) {
+					break;
+				}
+				proceedAll(group);
+				checkpoint();
+			}
+		}
+	}
+
+	/**
+	 * Prefetch the data of the remaining entries. A failure is not fatal, the entries are proceeded anyway.
+	 */
+	private void prefetch() {
+		if (task.isStreaming() || task.getStatus().getState() == ImportState.CANCELED) {
+			// The entries are not yet read, or will not be proceeded
+			return;
+		}
+		final List<B> remaining = new ArrayList<>();
+		getRemainingEntries().forEach(remaining::add);
+		try {
+			read(() -> call(() -> {
+				prefetch(remaining);
+				return null;
+			}));
+		} catch (final Exception e) {
+			log.warn("Unable to prefetch the entries of {}, they are read one by one", task, e);
+		}
+	}
+
+	/**
+	 * Return the entries to proceed. When resumed, the entries proceeded before the interruption are excluded. In
+	 * dry-run mode, the entries rejected before the start are excluded.
+	 */
+	private Iterable<B> getRemainingEntries() {
+		if (task.isResumed() || task.isDryRun()) {
+			// Skip the proceeded entries, and the ones rejected before the start
+			return () -> task.getEntries().stream().filter(e -> e.getStatus() == null).iterator();
+		}
+		return task.getEntries();
+	}
+
+	/**
+	 * Persist the progress of this task when the last checkpoint is too old.
+	 */
+	private void checkpoint() {
+		final long now = System.currentTimeMillis();
+		if (task.getResource() != null && now - lastCheckpoint >= CHECKPOINT_DELAY) {
+			lastCheckpoint = now;
 			try {
-				doBatch(importEntry);
-
-				// Success
-				importEntry.setStatus(Boolean.TRUE);
-				log.info("Import of {} succeed", importEntry);
-			} catch (final Exception ne) {
-				// The entry creation failed : entity itself of group membership
-				log.info("Import of {} failed : {}", importEntry, ne.getMessage());
-				importEntry.setStatus(Boolean.FALSE);
-				final ExceptionMapper<Throwable> mapper = jaxrsFactory.createExceptionMapper(ne.getClass(), null);
-				importEntry.setStatusText(mapper == null ? ne.getMessage() : mapper.toResponse(ne).getEntity().toString());
+				store.checkpoint(task);
+			} catch (final RuntimeException e) {
+				// Retried at the next checkpoint
+				log.warn("Unable to checkpoint {}", task, e);
 			}
-			task.getStatus().setDone(task.getStatus().getDone() + 1);
 		}
 	}
 
+	/**
+	 * Wait while this task is paused.
+	 * 
+	 * @return <code>false</code> when this task is canceled.
+	 */
+	private boolean awaitRunning() {
+		while (task.getStatus().getState() == ImportState.PAUSED) {
+			try {
+				Thread.sleep(PAUSE_CHECK);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return task.getStatus().getState() != ImportState.CANCELED;
+	}
+
+	/**
+	 * Group the consecutive entries that can be proceeded at once. Each entry is a group when this task is not a
+	 * {@link BatchCoalescer}.
+	 */
+	private Iterable<List<B>> coalesce(final Iterable<B> entries) {
+		return () -> new Iterator<List<B>>() {
+
+			private final Iterator<B> source = entries.iterator();
+
+			/**
+			 * The read entry not yet included in a group.
+			 */
+			private B next;
+
+			@Override
+			public boolean hasNext() {
+				return next != null || source.hasNext();
+			}
+
+			@Override
+			public List<B> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				final List<B> group = new ArrayList<>();
+				group.add(next == null ? source.next() : next);
+				next = null;
+				while (next == null && source.hasNext()) {
+					final B entry = source.next();
+					if (coalescer != null && group.size() < coalescer.getCoalesceLimit()
+							&& coalescer.isCoalesced(group.get(group.size() - 1), entry)) {
+						group.add(entry);
+					} else {
+						next = entry;
+					}
+				}
+				return group;
+			}
+		};
+	}
+
+	/**
+	 * Process the entries with the given amount of workers. Each worker proceeds a subset of the partitions in order.
+	 */
+	private void doBatch(final Iterable<List<B>> entries, final int parallel) {
+		final List<Executor> workers = new ArrayList<>(parallel);
+		final List<ExecutorService> owned = new ArrayList<>();
+		for (int i = 0; i < parallel; i++) {
+			if (task.isElastic()) {
+				// The threads are borrowed from the elastic pool only while there are pending entries
+				workers.add(batchExecutor.newLane());
+			} else {
+				final ExecutorService worker = new DelegatingSecurityContextExecutorService(Executors.newSingleThreadExecutor());
+				owned.add(worker);
+				workers.add(worker);
+			}
+		}
+		final Semaphore pending = new Semaphore(parallel * PENDING_PER_WORKER);
+		try {
+			for (final List<B> group : entries) {
+				if (!awaitRunning()) {
+					break;
+				}
+
+				// Bound the amount of entries waiting to be proceeded
+				pending.acquire();
+				workers.get(Math.floorMod(Objects.hashCode(getPartition(group.get(0))), parallel)).execute(() -> {
+					try {
+						proceedAll(group);
+					} finally {
+						pending.release();
+					}
+				});
+				checkpoint();
+			}
+			// Wait for the completion of all partitions
+			pending.acquire(parallel * PENDING_PER_WORKER);
+		} catch (final InterruptedException e) {
+			log.warn("Import {} has been interrupted", task.getId());
+			Thread.currentThread().interrupt();
+		} finally {
+			owned.forEach(ExecutorService::shutdown);
+		}
+	}
+
+	/**
+	 * Process a group of coalesced entries and update their status.
+	 */
+	private void proceedAll(final List<B> group) {
+		if (!awaitRunning()) {
+			// Canceled while this group was waiting
+			return;
+		}
+		try {
+			proceedAllRunning(group);
+		} finally {
+			group.forEach(this::release);
+
+			// The pooled thread may be reused by another task
+			READS.remove();
+		}
+	}
+
+	/**
+	 * Process a group of coalesced entries of a running task.
+	 */
+	private void proceedAllRunning(final List<B> group) {
+		if (group.size() == 1 || task.isDryRun()) {
+			// Nothing to coalesce
+			group.forEach(this::proceed);
+			return;
+		}
+
+		// Override previous status
+		group.forEach(e -> {
+			e.setStatus(null);
+			e.setStatusText(null);
+			e.setError(null);
+		});
+		try {
+			final long start = System.nanoTime();
+			write(() -> coalescer.doBatch(group));
+
+			// Success, the latency is shared by the entries
+			final long latency = (System.nanoTime() - start) / group.size();
+			group.forEach(e -> {
+				e.setStatus(Boolean.TRUE);
+				record(e, latency);
+				metrics.forEach(BatchMetrics::success);
+				task.getStatus().incrementDone();
+			});
+			log.info("Import of {} coalesced entries {} succeed", group.size(), group);
+		} catch (final Exception ne) {
+			// Isolate the failed entries
+			log.info("Import of {} coalesced entries {} failed, proceed them separately : {}", group.size(), group, ne.getMessage());
+			group.forEach(this::proceed);
+		}
+	}
+
+	/**
+	 * Process an entry and update its status.
+	 */
+	private void proceed(final B importEntry) {
+		// Override previous status
+		importEntry.setStatus(null);
+		importEntry.setStatusText(null);
+		importEntry.setError(null);
+		final long start = System.nanoTime();
+		try {
+			if (task.isDryRun()) {
+				// Only check this entry, the status text is the planned operation
+				final String verdict = read(() -> call(() -> plan(importEntry)));
+				importEntry.setStatusText(verdict);
+				task.getStatus().addPlan(verdict);
+			} else {
+				write(() -> doBatch(importEntry));
+			}
+
+			// Success
+			importEntry.setStatus(Boolean.TRUE);
+			metrics.forEach(BatchMetrics::success);
+			log.info("Import of {} succeed", importEntry);
+		} catch (final Exception ne) {
+			// The entry creation failed : entity itself of group membership
+			log.info("Import of {} failed : {}", importEntry, ne.getMessage());
+			fail(importEntry, ne);
+		}
+		record(importEntry, System.nanoTime() - start);
+		task.getStatus().incrementDone();
+	}
+
+	/**
+	 * Execute a write operation after the throttling, and record its latency.
+	 */
+	private void write(final Operation operation) throws Exception { // NOSONAR Allow global error there
+		for (final TokenBucket bucket : buckets) {
+			bucket.acquire();
+		}
+		final long start = System.nanoTime();
+		final long reads = READS.get()[0];
+		boolean succeeded = false;
+		try {
+			call(() -> {
+				operation.run();
+				return null;
+			});
+			succeeded = true;
+		} finally {
+			final long latency = System.nanoTime() - start;
+			if (succeeded) {
+				// A failure, such as a rejected entry, may be fast whatever the load of the backend
+				buckets.forEach(b -> b.record(latency));
+			}
+
+			// The reads made by this operation are already counted
+			final long writes = latency - (READS.get()[0] - reads);
+			metrics.forEach(m -> m.addWrite(writes));
+		}
+	}
+
+	/**
+	 * Execute a read operation and record its time.
+	 * 
+	 * @param operation
+	 *            The read operation.
+	 * @param <R>
+	 *            The result type.
+	 * @return The result of the operation.
+	 * @throws Exception
+	 *             Any error of the operation.
+	 */
+	protected <R> R read(final Callable<R> operation) throws Exception { // NOSONAR Allow global error there
+		final long start = System.nanoTime();
+		try {
+			return operation.call();
+		} finally {
+			final long latency = System.nanoTime() - start;
+			READS.get()[0] += latency;
+			metrics.forEach(m -> m.addRead(latency));
+		}
+	}
+
+	/**
+	 * Record the latency of a proceeded entry.
+	 */
+	private void record(final B entry, final long latency) {
+		final String operation = kind + "." + getOperation(entry);
+		metrics.forEach(m -> m.record(operation, latency));
+	}
+
+	/**
+	 * Execute an operation calling the IAM provider. On the elastic pool, the concurrent calls are capped.
+	 */
+	private <R> R call(final Callable<R> operation) throws Exception { // NOSONAR Allow global error there
+		if (!task.isElastic()) {
+			return operation.call();
+		}
+		batchExecutor.acquire();
+		try {
+			return operation.call();
+		} finally {
+			batchExecutor.release();
+		}
+	}
+
+	/**
+	 * Mark the given entry as failed. In streaming mode, the failed entries are the only kept ones.
+	 * 
+	 * @param entry
+	 *            The failed entry.
+	 * @param error
+	 *            The failure cause.
+	 */
+	protected void fail(final B entry, final Exception error) {
+		final String errorKey = toErrorKey(error);
+		final BatchError batchError = toError(errorKey, error);
+		entry.setError(batchError.getId());
+		entry.setStatusText(batchError.getText());
+
+		// The status is published last, so a checkpoint never reads a failed entry without its error
+		entry.setStatus(Boolean.FALSE);
+		task.getStatus().incrementFailures();
+		metrics.forEach(m -> m.fail(errorKey));
+		if (task.isDryRun()) {
+			task.getStatus().addPlan("error:" + errorKey);
+		}
+		if (task.isStreaming()) {
+			task.getEntries().add(entry);
+		}
+	}
+
+	/**
+	 * Return the error of the task matching the given failure. The error is created and serialized only for the first
+	 * failure having the same key and parameters.
+	 */
+	private BatchError toError(final String key, final Exception error) {
+		final Map<String, Object> parameters = toErrorParameters(error);
+		final String signature = toSignature(key, parameters);
+		final BatchError existing = errors.get(signature);
+		if (existing != null) {
+			return existing;
+		}
+		synchronized (errors) {
+			return errors.computeIfAbsent(signature, s -> {
+				final BatchError newError = new BatchError(task.getErrors().size(), key, parameters, toStatusText(error));
+				task.getErrors().add(newError);
+				return newError;
+			});
+		}
+	}
+
+	/**
+	 * Return the signature of an error : the failures having the same signature share the same error.
+	 */
+	private String toSignature(final String key, final Map<String, Object> parameters) {
+		return key + new TreeMap<>(parameters);
+	}
+
+	/**
+	 * Return the parameters of the given failure, such as the rule parameters of a validation error.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> toErrorParameters(final Exception error) {
+		final Map<String, Object> parameters = new TreeMap<>();
+		if (error instanceof ValidationJsonException) {
+			// Parameters of the first rule
+			((ValidationJsonException) error).getErrors().values().stream().flatMap(List::stream).findFirst()
+					.map(r -> (Map<String, Object>) r.get("parameters")).ifPresent(parameters::putAll);
+		} else if (error instanceof BusinessException) {
+			final Object[] values = ((BusinessException) error).getParameters();
+			for (int i = 0; values != null && i < values.length; i++) {
+				parameters.put(String.valueOf(i), values[i]);
+			}
+		} else if ((error instanceof ConstraintViolationException || !(error instanceof ValidationException)) && error.getMessage() != null) {
+			// The message is not already the key
+			parameters.put("message", error.getMessage());
+		}
+		return parameters;
+	}
+
+	/**
+	 * Serialize the given failure with the exception mapper of its class.
+	 */
+	private String toStatusText(final Exception error) {
+		final ExceptionMapper<Throwable> mapper = mappers
+				.computeIfAbsent(error.getClass(), c -> Optional.ofNullable(jaxrsFactory.<Throwable> createExceptionMapper(c, null))).orElse(null);
+		return mapper == null ? error.getMessage() : mapper.toResponse(error).getEntity().toString();
+	}
+
+	/**
+	 * Return a short key describing the given error, such as "company-unknown-id" for a validation error.
+	 * 
+	 * @param error
+	 *            The failure cause.
+	 * @return The error key.
+	 */
+	protected String toErrorKey(final Exception error) {
+		if (error instanceof ValidationJsonException) {
+			// First property and rule
+			return ((ValidationJsonException) error).getErrors().entrySet().stream().findFirst()
+					.map(e -> e.getKey() + "-" + e.getValue().stream().findFirst().map(r -> r.get("rule")).orElse("invalid")).orElse("invalid");
+		}
+		if (error instanceof ConstraintViolationException) {
+			return "invalid";
+		}
+		if ((error instanceof ValidationException || error instanceof BusinessException) && error.getMessage() != null
+				&& ERROR_KEY.matcher(error.getMessage()).matches()) {
+			// Only a key-like message, a free text would make too many distinct keys
+			return error.getMessage();
+		}
+		return error.getClass().getSimpleName();
+	}
+
+	/**
+	 * Reject an entry without processing it, such as an invalid entry. This entry is counted as proceeded.
+	 * 
+	 * @param entry
+	 *            The rejected entry.
+	 * @param error
+	 *            The rejection cause.
+	 */
+	public void reject(final B entry, final Exception error) {
+		fail(entry, error);
+		task.getStatus().incrementDone();
+	}
+
 	/**
 	 * Configure the task.
 	 * 
@@ -93,28 +779,58 @@ public abstract class AbstractLdapBatchTask<B extends BatchElement> implements R
 	 */
 	public void configure(final BatchTaskVo<B> task) {
 		this.task = task;
-		this.task.getStatus().setStart(new Date());
+		final Date notBefore = task.getStatus().getNotBefore();
+		synchronized (task.getStatus()) {
+			if (task.getStatus().getState() == ImportState.CANCELED) {
+				// Canceled while the entries were parsed, the cancellation is kept
+				log.info("Task {} is canceled before being started", task.getId());
+			} else if (notBefore != null && notBefore.getTime() > System.currentTimeMillis()) {
+				// Validated, and waiting for the scheduled time
+				this.task.getStatus().setState(ImportState.QUEUED);
+			} else {
+				if (task.getStatus().getStart() == null) {
+					// Resumed tasks keep their original start
+					this.task.getStatus().setStart(new Date());
+				}
+				this.task.getStatus().setState(ImportState.RUNNING);
+				this.task.getStatus().getMetrics().start();
+			}
+		}
+		this.buckets = throttle.getBuckets(task);
+		this.metrics = Arrays.asList(task.getStatus().getMetrics(), telemetry.getGlobal());
+		this.kind = toKind();
 		this.task.getStatus().setEntries(task.getEntries().size());
 
+		// The resumed failures keep sharing the stored errors
+		task.getErrors().forEach(e -> errors.put(toSignature(e.getKey(), e.getParameters()), e));
+
 		// Save the CXF factory for JSON serialization
 		this.jaxrsFactory = getMessage() == null ? ServerProviderFactory.getInstance()
 				: (ServerProviderFactory) getMessage().getExchange().getEndpoint().get("org.apache.cxf.jaxrs.provider.ServerProviderFactory");
 	}
 
+	/**
+	 * Return the import kind from the class name, such as "user-full" for {@link UserFullLdapTask}.
+	 */
+	private String toKind() {
+		final String name = StringUtils.removeEnd(ClassUtils.getUserClass(this).getSimpleName(), "LdapTask");
+		return StringUtils.join(StringUtils.splitByCharacterTypeCamelCase(name), '-').toLowerCase(Locale.ENGLISH);
+	}
+
 	protected Message getMessage() {
 		return PhaseInterceptorChain.getCurrentMessage();
 	}
 
 	/**
-	 * Split and normalize a string to a collection, ignoring empty items.
+	 * Normalize the values of a multi-valued attribute, ignoring empty items.
 	 * 
-	 * @param rawValue
-	 *            The raw string to split.
-	 * @return A collection from the raw string.
+	 * @param values
+	 *            The raw values. May be <code>null</code>.
+	 * @return The normalized values.
 	 */
-	protected List<String> toList(final String rawValue) {
-		return Pattern.compile(",").splitAsStream(StringUtils.trimToEmpty(rawValue)).map(Normalizer::normalize).filter(StringUtils::isNotBlank)
-				.collect(Collectors.toList());
+	protected List<String> toList(final List<String> values) {
+		return CollectionUtils.emptyIfNull(values).stream().map(StringUtils::trimToEmpty).map(Normalizer::normalize)
+				.filter(StringUtils::isNotBlank).collect(Collectors.toList());
 	}
 
 }
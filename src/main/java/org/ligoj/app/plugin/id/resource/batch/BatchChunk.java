@@ -0,0 +1,141 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A range of CSV records within an uploaded file, read and validated apart from the other ranges. The ranges are found
+ * from the bytes of the file, so the file must use an ASCII compatible encoding such as UTF-8. A quoted value spanning
+ * several lines is not split, and the blank lines are not records.
+ */
+@Getter
+@AllArgsConstructor
+public class BatchChunk {
+
+	/**
+	 * Size of the buffer used to find the ranges.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Position of the first byte of this range.
+	 */
+	private final long offset;
+
+	/**
+	 * Amount of bytes of this range.
+	 */
+	private final int length;
+
+	/**
+	 * The line number of each record of this range, starting from 1. A record may span several lines.
+	 */
+	private final List<Integer> lines;
+
+	/**
+	 * Split the given file into ranges of records.
+	 *
+	 * @param file
+	 *            The CSV file, in an ASCII compatible encoding.
+	 * @param size
+	 *            The maximal amount of records of a range.
+	 * @return The ranges, in the file order.
+	 * @throws IOException
+	 *             When the file cannot be read.
+	 */
+	public static List<BatchChunk> split(final Path file, final int size) throws IOException {
+		final List<BatchChunk> chunks = new ArrayList<>();
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		long offset = 0;
+		long start = 0;
+		int line = 1;
+		int recordLine = 1;
+		boolean quoted = false;
+		boolean blank = true;
+		List<Integer> lines = new ArrayList<>();
+		try (InputStream input = Files.newInputStream(file)) {
+			for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+				for (int i = 0; i < read; i++) {
+					final byte next = buffer[i];
+					offset++;
+					if (next == '"') {
+						quoted = !quoted;
+					}
+					if (next == '\n') {
+						line++;
+						if (quoted) {
+							// The record continues on the next line
+							continue;
+						}
+						if (!blank) {
+							lines.add(recordLine);
+						}
+						recordLine = line;
+						blank = true;
+						if (lines.size() >= size) {
+							chunks.add(new BatchChunk(start, Math.toIntExact(offset - start), lines));
+							start = offset;
+							lines = new ArrayList<>();
+						}
+					} else if (next < 0 || next > ' ') {
+						// Not a whitespace, including the non ASCII bytes
+						blank = false;
+					}
+				}
+			}
+		}
+		if (!blank) {
+			// Last record without line feed
+			lines.add(recordLine);
+		}
+		if (!lines.isEmpty()) {
+			chunks.add(new BatchChunk(start, Math.toIntExact(offset - start), lines));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Read the records of this range. The blank lines are removed, so the records match the {@link #getLines()}.
+	 *
+	 * @param file
+	 *            The split file.
+	 * @param charset
+	 *            The encoding of the file.
+	 * @return The records of this range, one per line except for the quoted values spanning several lines.
+	 * @throws IOException
+	 *             When the file cannot be read.
+	 */
+	public String read(final Path file, final Charset charset) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+		try (FileChannel channel = FileChannel.open(file)) {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) == -1) {
+					// The file has been truncated
+					break;
+				}
+			}
+		}
+
+		final StringBuilder records = new StringBuilder(length);
+		boolean quoted = false;
+		for (final String raw : new String(buffer.array(), 0, buffer.position(), charset).split("\n", -1)) {
+			if (quoted || !raw.trim().isEmpty()) {
+				records.append(raw).append('\n');
+			}
+			for (int i = 0; i < raw.length(); i++) {
+				quoted ^= raw.charAt(i) == '"';
+			}
+		}
+		return records.toString();
+	}
+}
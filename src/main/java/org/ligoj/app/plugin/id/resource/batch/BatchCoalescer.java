@@ -0,0 +1,44 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.List;
+
+/**
+ * Capability of a batch task proceeding consecutive entries at once. The entries of a task not implementing this
+ * interface are always proceeded one by one.
+ * 
+ * @param <B>
+ *            The batch element type.
+ */
+public interface BatchCoalescer<B extends BatchElement> {
+
+	/**
+	 * Process consecutive entries at once. Only called for the entries coalesced with
+	 * {@link #isCoalesced(BatchElement, BatchElement)}. When this operation fails, each entry is proceeded separately.
+	 * 
+	 * @param entries
+	 *            The consecutive batch entries, at least 2.
+	 * @throws Exception
+	 *             Any error cause the abortion for these entries.
+	 */
+	void doBatch(List<B> entries) throws Exception; // NOSONAR Allow global error there
+
+	/**
+	 * Indicate the given entry can be proceeded at once with the previous consecutive one.
+	 * 
+	 * @param previous
+	 *            The previous entry.
+	 * @param entry
+	 *            The entry following the previous one.
+	 * @return <code>true</code> when both entries can be proceeded with {@link #doBatch(List)}.
+	 */
+	boolean isCoalesced(B previous, B entry);
+
+	/**
+	 * Return the maximal amount of entries proceeded at once by {@link #doBatch(List)}.
+	 * 
+	 * @return The maximal amount of coalesced entries. Unbounded by default.
+	 */
+	default int getCoalesceLimit() {
+		return Integer.MAX_VALUE;
+	}
+}
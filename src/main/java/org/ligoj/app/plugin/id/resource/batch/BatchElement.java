@@ -35,4 +35,19 @@ public interface BatchElement {
 	 */
 	void setStatusText(String text);
 
+	/**
+	 * Return the identifier of the failure of this element.
+	 * 
+	 * @return The identifier of the failure in {@link BatchTaskVo#getErrors()}. <code>null</code> when not failed.
+	 */
+	Integer getError();
+
+	/**
+	 * Set the identifier of the failure of this element.
+	 * 
+	 * @param error
+	 *            The identifier of the failure in {@link BatchTaskVo#getErrors()}. <code>null</code> when not failed.
+	 */
+	void setError(Integer error);
+
 }
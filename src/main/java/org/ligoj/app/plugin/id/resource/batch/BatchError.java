@@ -0,0 +1,36 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * A distinct failure of batch entries. The failed entries refer to this error by its identifier.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchError {
+
+	/**
+	 * Identifier of this error within its task.
+	 */
+	private int id;
+
+	/**
+	 * The error key, such as "company-unknown-id".
+	 */
+	private String key;
+
+	/**
+	 * The parameters of this error, such as the unknown value.
+	 */
+	private Map<String, Object> parameters;
+
+	/**
+	 * The serialized error, as exposed by the exception mappers.
+	 */
+	private String text;
+}
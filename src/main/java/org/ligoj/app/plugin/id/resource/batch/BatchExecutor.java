@@ -0,0 +1,204 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Elastic execution of the batch tasks, apart from the shared task executor. The threads are created on demand and
+ * released when idle, so a task may use many workers, while the concurrent calls to the IAM provider are capped for
+ * all the elastic tasks.
+ */
+@Component
+@Slf4j
+public class BatchExecutor implements Executor {
+
+	/**
+	 * Maximal amount of threads parsing the same upload.
+	 */
+	private static final int PARSE_PARALLEL = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Maximal amount of concurrent calls to the IAM provider from the elastic tasks.
+	 */
+	@Value("${id.batch.concurrency:64}")
+	protected int concurrency;
+
+	private final ExecutorService pool = Executors
+			.newCachedThreadPool(new BasicThreadFactory.Builder().namingPattern("id-batch-%d").daemon(true).build());
+
+	/**
+	 * Parses the uploads in background, apart from the threads proceeding the entries.
+	 */
+	private final ExecutorService parsers = new DelegatingSecurityContextExecutorService(
+			Executors.newCachedThreadPool(new BasicThreadFactory.Builder().namingPattern("id-batch-parser-%d").daemon(true).build()));
+
+	/**
+	 * Starts the queued tasks at their scheduled time.
+	 */
+	private final ScheduledExecutorService scheduler = Executors
+			.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder().namingPattern("id-batch-scheduler").daemon(true).build());
+
+	private Semaphore permits;
+
+	/**
+	 * Initialize the permits of the IAM provider calls.
+	 */
+	@PostConstruct
+	public void initialize() {
+		permits = new Semaphore(concurrency);
+	}
+
+	/**
+	 * Release the threads.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		pool.shutdownNow();
+		parsers.shutdownNow();
+		scheduler.shutdownNow();
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		pool.execute(command);
+	}
+
+	/**
+	 * Parse an upload in background. The parsing threads are not shared with the tasks, so a parsing upload cannot wait
+	 * for a worker held by a task reading this same upload.
+	 * 
+	 * @param command
+	 *            The parsing command.
+	 */
+	public void parse(final Runnable command) {
+		parsers.execute(command);
+	}
+
+	/**
+	 * Execute the given parsing commands on a bounded amount of parsing threads, and wait for their completion. The
+	 * remaining commands are not executed after a failure.
+	 * 
+	 * @param commands
+	 *            The parsing commands.
+	 * @param <T>
+	 *            The result type.
+	 * @return The results, in the order of the commands.
+	 * @throws IOException
+	 *             The first failure of the commands, or when interrupted.
+	 */
+	public <T> List<T> parseAll(final List<Callable<T>> commands) throws IOException {
+		final List<T> results = new ArrayList<>(Collections.nCopies(commands.size(), null));
+		final AtomicInteger next = new AtomicInteger();
+		final List<Future<?>> workers = new ArrayList<>();
+		for (int i = Math.min(PARSE_PARALLEL, commands.size()); i-- > 0;) {
+			workers.add(parsers.submit(() -> {
+				for (int command = next.getAndIncrement(); command < commands.size(); command = next.getAndIncrement()) {
+					results.set(command, commands.get(command).call());
+				}
+				return null;
+			}));
+		}
+		try {
+			for (final Future<?> worker : workers) {
+				worker.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Parsing interrupted");
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			// Stop the other workers after a failure
+			next.set(commands.size());
+			workers.forEach(w -> w.cancel(true));
+		}
+		return results;
+	}
+
+	/**
+	 * Execute the given command at the given time.
+	 *
+	 * @param command
+	 *            The command to execute. Must be short, such as the submission of a task.
+	 * @param time
+	 *            The execution time. When in the past, the command is executed as soon as possible.
+	 */
+	public void schedule(final Runnable command, final Date time) {
+		scheduler.schedule(command, Math.max(0, time.getTime() - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Execute the given command periodically. A failure of an execution does not prevent the next ones.
+	 *
+	 * @param command
+	 *            The command to execute. Must be short, such as a maintenance query.
+	 * @param period
+	 *            The period between two executions in milliseconds. The first execution is after one period.
+	 */
+	public void scheduleAtFixedRate(final Runnable command, final long period) {
+		scheduler.scheduleAtFixedRate(() -> {
+			try {
+				command.run();
+			} catch (final RuntimeException e) {
+				// Retried at the next period
+				log.error("Periodic batch command has failed", e);
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Return a new lane proceeding its commands in order with the security context of the submitter.
+	 *
+	 * @return A new lane.
+	 */
+	public BatchLane newLane() {
+		return new BatchLane(new DelegatingSecurityContextExecutorService(pool));
+	}
+
+	/**
+	 * Take a permit to call the IAM provider, waiting as needed.
+	 *
+	 * @throws InterruptedException
+	 *             When the wait has been interrupted.
+	 */
+	public void acquire() throws InterruptedException {
+		permits.acquire();
+	}
+
+	/**
+	 * Release a permit taken with {@link #acquire()}.
+	 */
+	public void release() {
+		permits.release();
+	}
+}
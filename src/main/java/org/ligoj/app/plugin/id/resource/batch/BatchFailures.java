@@ -0,0 +1,70 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+
+/**
+ * Failed entries of a streaming task, added by the workers while the task is read by the requests. An addition is done
+ * in constant time, and the readers iterate over a snapshot of the failures added so far.
+ *
+ * @param <B>
+ *            The batch element type.
+ */
+public class BatchFailures<B extends BatchElement> extends AbstractList<B> {
+
+	private final List<B> failures = new ArrayList<>();
+
+	@Override
+	public synchronized boolean add(final B entry) {
+		return failures.add(entry);
+	}
+
+	@Override
+	public synchronized B get(final int index) {
+		return failures.get(index);
+	}
+
+	@Override
+	public synchronized int size() {
+		return failures.size();
+	}
+
+	/**
+	 * Return the failures added so far.
+	 *
+	 * @return A read only copy of the failures.
+	 */
+	public synchronized List<B> snapshot() {
+		return Collections.unmodifiableList(new ArrayList<>(failures));
+	}
+
+	@Override
+	public Iterator<B> iterator() {
+		return snapshot().iterator();
+	}
+
+	@Override
+	public ListIterator<B> listIterator(final int index) {
+		return snapshot().listIterator(index);
+	}
+
+	@Override
+	public Spliterator<B> spliterator() {
+		return snapshot().spliterator();
+	}
+
+	@Override
+	public synchronized Object[] toArray() {
+		return failures.toArray();
+	}
+
+	@Override
+	public synchronized <T> T[] toArray(final T[] array) {
+		return failures.toArray(array);
+	}
+}
@@ -0,0 +1,124 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+
+/**
+ * Bounded feed of batch entries, filled by chunks while the entries are read, and consumed by a single batch task.
+ * The producer is blocked while the consumer is late, so the amount of entries held in memory is bounded.
+ * 
+ * @param <B>
+ *            The batch element type.
+ */
+public class BatchFeed<B extends BatchElement> implements Iterable<B> {
+
+	/**
+	 * Maximal amount of chunks waiting to be proceeded.
+	 */
+	private static final int CAPACITY = 10;
+
+	/**
+	 * Marker of the end of the feed.
+	 */
+	private final List<B> end = Collections.emptyList();
+
+	private final BlockingQueue<List<B>> chunks = new ArrayBlockingQueue<>(CAPACITY);
+
+	/**
+	 * When <code>true</code>, the added entries are ignored.
+	 */
+	private volatile boolean canceled;
+
+	/**
+	 * Add a chunk of entries to this feed. Wait while the feed is full.
+	 * 
+	 * @param chunk
+	 *            The entries to add.
+	 */
+	public void offer(final List<B> chunk) {
+		if (!chunk.isEmpty() && !canceled) {
+			put(chunk);
+		}
+	}
+
+	/**
+	 * Close this feed : no more entries will be added.
+	 */
+	public void close() {
+		if (!canceled) {
+			put(end);
+		}
+	}
+
+	/**
+	 * Cancel this feed : the waiting entries are dropped, and the added ones are ignored. The producer is never blocked
+	 * anymore.
+	 */
+	public void cancel() {
+		canceled = true;
+		chunks.clear();
+	}
+
+	/**
+	 * Indicate this feed is canceled.
+	 * 
+	 * @return <code>true</code> when this feed is canceled.
+	 */
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	private void put(final List<B> chunk) {
+		try {
+			chunks.put(chunk);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TechnicalException("Batch feed has been interrupted", e);
+		}
+	}
+
+	@Override
+	public Iterator<B> iterator() {
+		return new Iterator<B>() {
+
+			private Iterator<B> current = Collections.emptyIterator();
+
+			private boolean closed;
+
+			@Override
+			public boolean hasNext() {
+				while (!closed && !current.hasNext()) {
+					// Wait for the next chunk
+					final List<B> chunk = take();
+					closed = chunk == end;
+					current = chunk.iterator();
+				}
+				return current.hasNext();
+			}
+
+			@Override
+			public B next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+		};
+	}
+
+	private List<B> take() {
+		try {
+			return chunks.take();
+		} catch (final InterruptedException e) {
+			// Stop the consumption
+			Thread.currentThread().interrupt();
+			return end;
+		}
+	}
+}
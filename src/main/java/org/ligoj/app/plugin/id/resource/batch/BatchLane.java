@@ -0,0 +1,55 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Executor running the submitted commands one after the other, in order, on a shared pool. A thread of the pool is only
+ * used while this lane has pending commands.
+ */
+public class BatchLane implements Executor {
+
+	private final Queue<Runnable> commands = new ArrayDeque<>();
+
+	private final Executor pool;
+
+	/**
+	 * The command being executed. <code>null</code> when this lane is idle.
+	 */
+	private Runnable active;
+
+	/**
+	 * Build a lane on the given pool.
+	 *
+	 * @param pool
+	 *            The pool executing the commands.
+	 */
+	public BatchLane(final Executor pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public synchronized void execute(final Runnable command) {
+		commands.add(() -> {
+			try {
+				command.run();
+			} finally {
+				next();
+			}
+		});
+		if (active == null) {
+			next();
+		}
+	}
+
+	/**
+	 * Submit the next pending command to the pool.
+	 */
+	private synchronized void next() {
+		active = commands.poll();
+		if (active != null) {
+			pool.execute(active);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+
+/**
+ * Metrics of batch tasks : latency by operation, outcome by error key, throughput and time split between the
+ * validation, the reads and the writes.
+ */
+public class BatchMetrics {
+
+	/**
+	 * Maximal amount of distinct error keys. The failures of the other keys are counted with {@value #OTHER_ERRORS}.
+	 */
+	private static final int MAX_ERROR_KEYS = 100;
+
+	/**
+	 * Key of the failures beyond {@value #MAX_ERROR_KEYS} distinct error keys.
+	 */
+	private static final String OTHER_ERRORS = "other";
+
+	/**
+	 * Latency of the proceeded entries. Key is the import kind and the operation, such as "user-atomic.attribute".
+	 */
+	@Getter
+	private final Map<String, LatencyHistogram> latencies = new ConcurrentSkipListMap<>();
+
+	private final Map<String, LongAdder> failures = new ConcurrentSkipListMap<>();
+
+	private final LongAdder successes = new LongAdder();
+
+	/**
+	 * Time spent in validation, in nanoseconds.
+	 */
+	private final LongAdder validation = new LongAdder();
+
+	/**
+	 * Time spent in reads, in nanoseconds.
+	 */
+	private final LongAdder reads = new LongAdder();
+
+	/**
+	 * Time spent in writes, in nanoseconds.
+	 */
+	private final LongAdder writes = new LongAdder();
+
+	/**
+	 * Start time of the measured processing, in milliseconds. <code>0</code> while not started.
+	 */
+	@Getter
+	private volatile long since;
+
+	/**
+	 * Start the clock of the throughput. Only the first call is considered.
+	 */
+	public synchronized void start() {
+		if (since == 0) {
+			since = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Record the latency of a proceeded entry.
+	 *
+	 * @param operation
+	 *            The import kind and the operation.
+	 * @param nanos
+	 *            The latency in nanoseconds.
+	 */
+	public void record(final String operation, final long nanos) {
+		latencies.computeIfAbsent(operation, o -> new LatencyHistogram()).record(nanos);
+	}
+
+	/**
+	 * Count a succeeded entry.
+	 */
+	public void success() {
+		successes.increment();
+	}
+
+	/**
+	 * Count a failed entry.
+	 *
+	 * @param errorKey
+	 *            The error key, such as "company-unknown-id".
+	 */
+	public void fail(final String errorKey) {
+		LongAdder counter = failures.get(errorKey);
+		if (counter == null) {
+			// Bound the amount of counters
+			counter = failures.computeIfAbsent(failures.size() < MAX_ERROR_KEYS ? errorKey : OTHER_ERRORS, k -> new LongAdder());
+		}
+		counter.increment();
+	}
+
+	/**
+	 * Add time spent in validation.
+	 *
+	 * @param nanos
+	 *            The validation time in nanoseconds.
+	 */
+	public void addValidation(final long nanos) {
+		validation.add(nanos);
+	}
+
+	/**
+	 * Add time spent in reads.
+	 *
+	 * @param nanos
+	 *            The read time in nanoseconds.
+	 */
+	public void addRead(final long nanos) {
+		reads.add(nanos);
+	}
+
+	/**
+	 * Add time spent in writes.
+	 *
+	 * @param nanos
+	 *            The write time in nanoseconds.
+	 */
+	public void addWrite(final long nanos) {
+		writes.add(nanos);
+	}
+
+	/**
+	 * Return the amount of failed entries by error key.
+	 *
+	 * @return The amount of failed entries by error key.
+	 */
+	public Map<String, Long> getFailures() {
+		return failures.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().sum()));
+	}
+
+	/**
+	 * Return the amount of succeeded entries.
+	 *
+	 * @return The amount of succeeded entries.
+	 */
+	public long getSuccesses() {
+		return successes.sum();
+	}
+
+	/**
+	 * Return the time spent in validation.
+	 *
+	 * @return The validation time in milliseconds.
+	 */
+	public long getValidation() {
+		return validation.sum() / 1_000_000;
+	}
+
+	/**
+	 * Return the time spent in reads.
+	 *
+	 * @return The read time in milliseconds.
+	 */
+	public long getReads() {
+		return reads.sum() / 1_000_000;
+	}
+
+	/**
+	 * Return the time spent in writes.
+	 *
+	 * @return The write time in milliseconds.
+	 */
+	public long getWrites() {
+		return writes.sum() / 1_000_000;
+	}
+
+	/**
+	 * Return the average amount of proceeded entries per second since the start.
+	 *
+	 * @return The amount of proceeded entries per second. <code>0</code> while not started.
+	 */
+	public double getThroughput() {
+		if (since == 0) {
+			return 0;
+		}
+		final long elapsed = Math.max(1, System.currentTimeMillis() - since);
+		return (getSuccesses() + failures.values().stream().mapToLong(LongAdder::sum).sum()) * 1000d / elapsed;
+	}
+}
@@ -0,0 +1,105 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import javax.ws.rs.QueryParam;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Optional settings of a batch submission.
+ */
+@Getter
+@Setter
+public class BatchOptions {
+
+	/**
+	 * When <code>true</code>, the entries are proceeded as they are read from the uploaded file, and only the failed
+	 * ones are kept in memory. Otherwise, the whole file is read and validated before the first entry is proceeded.
+	 * Implies {@link #background}, the request does not wait for the entries to be proceeded.
+	 */
+	@QueryParam("streaming")
+	private boolean streaming;
+
+	/**
+	 * When <code>true</code>, the uploaded file is spooled to a temporary file, and the task identifier is returned
+	 * right away. The entries are then read and validated apart from the request thread, and the errors are reported
+	 * by the status of the task.
+	 */
+	@QueryParam("background")
+	private boolean background;
+
+	/**
+	 * Key identifying this submission for the current user. A submission having the same key as a previous task, not
+	 * canceled, returns the identifier of this task instead of starting a new one.
+	 */
+	@QueryParam("idempotency-key")
+	private String idempotencyKey;
+
+	/**
+	 * When <code>true</code>, the uploaded file is spooled to compute its content hash, and a submission having the same
+	 * content as a previous task of the current user, not canceled, returns the identifier of this task instead of
+	 * starting a new one. Ignored when there is an idempotency key.
+	 */
+	@QueryParam("deduplicate")
+	private boolean deduplicate;
+
+	/**
+	 * Amount of workers proceeding the entries concurrently. The entries are partitioned by key, and the entries of a
+	 * partition are proceeded in order by the same worker. When lower than 2, the entries are proceeded sequentially.
+	 */
+	@QueryParam("parallel")
+	private int parallel;
+
+	/**
+	 * When <code>true</code>, the entries are only checked against the current state of the identity repository, and
+	 * nothing is changed. The status text of each entry is the planned operation, and the import status contains the
+	 * aggregated plan.
+	 */
+	@QueryParam("dry-run")
+	private boolean dryRun;
+
+	/**
+	 * When <code>true</code>, the entries are proceeded by level of dependency, such as the nested groups, parents
+	 * first. A level is completed before the next one, and the entries of a level are proceeded concurrently when
+	 * {@link #parallel} is greater than 1. Not supported in streaming mode.
+	 */
+	@QueryParam("ordered")
+	private boolean ordered;
+
+	/**
+	 * When <code>true</code>, the task and its workers run on an elastic pool instead of the shared task executor. A
+	 * worker only holds a thread while it has pending entries, so more workers are accepted, and the concurrent calls
+	 * of all the elastic tasks to the IAM provider are capped.
+	 */
+	@QueryParam("elastic")
+	private boolean elastic;
+
+	/**
+	 * Maximal rate of the writes of this task, in writes per second. When not positive, there is no limit for this task,
+	 * but the limit shared by all tasks writing to the same IAM provider still applies.
+	 */
+	@QueryParam("rate")
+	private double rate;
+
+	/**
+	 * When <code>true</code>, the rate of this task is halved when the observed write latency rises, and slowly restored
+	 * when it gets back to normal.
+	 */
+	@QueryParam("adaptive")
+	private boolean adaptive;
+
+	/**
+	 * The time before which the processing does not start, in milliseconds. The entries are validated right away, and
+	 * the task is queued until this time. When not positive, the processing starts as soon as possible.
+	 */
+	@QueryParam("not-before")
+	private long notBefore;
+
+	/**
+	 * The name of the maintenance window the processing has to start in, such as "night". The entries are validated
+	 * right away, and the task is queued until the window opens. Not supported in streaming mode.
+	 */
+	@QueryParam("window")
+	private String window;
+
+}
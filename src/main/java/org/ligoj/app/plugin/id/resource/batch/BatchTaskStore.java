@@ -0,0 +1,457 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateUtils;
+import org.apache.commons.lang3.tuple.Triple;
+import org.hibernate.Session;
+import org.ligoj.app.plugin.id.dao.BatchTaskEntryRepository;
+import org.ligoj.app.plugin.id.dao.BatchTaskRepository;
+import org.ligoj.app.plugin.id.model.BatchTask;
+import org.ligoj.app.plugin.id.model.BatchTaskEntry;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persistent store of the batch tasks and their entries. The running tasks are checkpointed, so they can be resumed
+ * after a restart.
+ */
+@Component
+@Slf4j
+public class BatchTaskStore {
+
+	/**
+	 * Amount of entries written in the same transaction.
+	 */
+	private static final int WRITE_CHUNK = 500;
+
+	/**
+	 * Amount of days a completed task is kept.
+	 */
+	private static final int RETENTION_DAYS = 30;
+
+	/**
+	 * Delay between two confirmations of the running tasks of this node, in milliseconds.
+	 */
+	private static final long HEARTBEAT_DELAY = DateUtils.MILLIS_PER_MINUTE;
+
+	/**
+	 * Delay without confirmation after which a task is considered as interrupted, in milliseconds.
+	 */
+	private static final long LEASE_DURATION = 5 * HEARTBEAT_DELAY;
+
+	/**
+	 * Delay between two purges of the completed tasks, in milliseconds.
+	 */
+	private static final long PURGE_DELAY = DateUtils.MILLIS_PER_HOUR;
+
+	/**
+	 * Identifier of this node, owning the tasks it runs.
+	 */
+	private static final String NODE = UUID.randomUUID().toString();
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@Autowired
+	private BatchTaskRepository repository;
+
+	@Autowired
+	private BatchTaskEntryRepository entryRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private BatchExecutor executor;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	/**
+	 * Schedule the confirmation of the running tasks, and the purge of the completed ones.
+	 */
+	@PostConstruct
+	public void initialize() {
+		executor.scheduleAtFixedRate(this::heartbeat, HEARTBEAT_DELAY);
+		executor.scheduleAtFixedRate(this::purge, PURGE_DELAY);
+	}
+
+	/**
+	 * Persist a completed task and its entries. The entries are written by chunks, each one in its own transaction.
+	 * When the task has been checkpointed, only the changes since the last checkpoint are written.
+	 * 
+	 * @param task
+	 *            The completed task.
+	 */
+	public void save(final BatchTaskVo<?> task) {
+		if (task.getResource() != null && repository.findBy(task.getPrincipal(), task.getId()) != null) {
+			checkpoint(task);
+			log.info("Task {} of {} is completed", task.getId(), task.getPrincipal());
+		} else {
+			create(task, null);
+		}
+	}
+
+	/**
+	 * Persist a starting task and all its entries, so it can be resumed after a restart.
+	 * 
+	 * @param task
+	 *            The starting task.
+	 * @param handler
+	 *            The class name of the task processing the entries. <code>null</code> when the task cannot be
+	 *            resumed.
+	 */
+	public void create(final BatchTaskVo<?> task, final String handler) {
+		final TransactionTemplate template = new TransactionTemplate(transactionManager);
+		final BatchTask entity = template.execute(s -> {
+			final BatchTask newTask = new BatchTask();
+			newTask.setBatch(task.getId());
+			newTask.setPrincipal(task.getPrincipal());
+			newTask.setStart(task.getStatus().getStart());
+			newTask.setNotBefore(task.getStatus().getNotBefore());
+			newTask.setEnd(task.getStatus().getEnd());
+			newTask.setEntries(task.getStatus().getEntries());
+			newTask.setDone(task.getStatus().getDone());
+			newTask.setFailures(task.getStatus().getFailures());
+			newTask.setStatus(task.getStatus().getStatus());
+			newTask.setType(task.getEntries().stream().findFirst().map(e -> e.getClass().getName()).orElse(null));
+			newTask.setResource(handler == null ? null : task.getResource());
+			newTask.setHandler(handler);
+			newTask.setColumns(task.getColumns() == null ? null : String.join(",", task.getColumns()));
+			newTask.setParallel(task.getParallel());
+			newTask.setOrdered(task.isOrdered());
+			newTask.setElastic(task.isElastic());
+			newTask.setDryRun(task.isDryRun());
+			Optional.ofNullable(task.getBucket()).ifPresent(b -> {
+				newTask.setRate(b.getMaxRate());
+				newTask.setAdaptive(b.isAdaptive());
+			});
+			newTask.setOwner(NODE);
+			newTask.setHeartbeat(new Date());
+			newTask.setErrors(toErrors(task));
+			repository.saveAndFlush(newTask);
+			return newTask;
+		});
+
+		// Write the entries by chunks, each chunk with JDBC batches
+		final List<? extends BatchElement> entries = new ArrayList<>(task.getEntries());
+		for (int offset = 0; offset < entries.size(); offset += WRITE_CHUNK) {
+			final int from = offset;
+			final List<? extends BatchElement> chunk = entries.subList(from, Math.min(from + WRITE_CHUNK, entries.size()));
+			template.execute(s -> {
+				em.unwrap(Session.class).setJdbcBatchSize(WRITE_CHUNK);
+				entryRepository.saveAll(IntStream.range(0, chunk.size()).mapToObj(i -> toEntity(entity, from + i, chunk.get(i)))
+						.collect(Collectors.toList()));
+				entryRepository.flush();
+
+				// Release the written entries
+				em.clear();
+				return null;
+			});
+		}
+		log.info("Task {} of {} is stored with {} entries", task.getId(), task.getPrincipal(), entries.size());
+	}
+
+	/**
+	 * Persist the progress of a stored task : the counters and the status of the entries proceeded since the last
+	 * checkpoint. Only called by the thread proceeding the task.
+	 * 
+	 * @param task
+	 *            The running or completed task.
+	 */
+	public void checkpoint(final BatchTaskVo<?> task) {
+		final List<? extends BatchElement> entries = task.getEntries();
+
+		// Move the checkpoint to the first entry not yet proceeded. The status of an entry is set last, so the result
+		// of a proceeded entry is complete
+		final Map<Integer, Triple<Boolean, String, Integer>> results = new LinkedHashMap<>();
+		final int from = task.getCheckpoint();
+		int next = from;
+		while (next < entries.size() && snapshot(entries.get(next), next, results)) {
+			next++;
+		}
+
+		// In parallel mode, some following entries may also be proceeded, they are written without moving the
+		// checkpoint
+		int remaining = task.getStatus().getDone() - next;
+		for (int line = next + 1; remaining > 0 && line < entries.size(); line++) {
+			if (snapshot(entries.get(line), line, results)) {
+				remaining--;
+			}
+		}
+
+		// Write the statuses by chunks, with an update per distinct result within a chunk
+		final List<Integer> lines = new ArrayList<>(results.keySet());
+		final TransactionTemplate template = new TransactionTemplate(transactionManager);
+		final int id = repository.findBy(task.getPrincipal(), task.getId()).getId();
+		for (int offset = 0; offset < lines.size(); offset += WRITE_CHUNK) {
+			final List<Integer> chunk = lines.subList(offset, Math.min(offset + WRITE_CHUNK, lines.size()));
+			template.execute(s -> {
+				chunk.stream().collect(Collectors.groupingBy(results::get))
+						.forEach((result, same) -> entryRepository.updateStatus(id, same, result.getLeft(),
+								StringUtils.abbreviate(result.getMiddle(), BatchTaskEntry.STATUS_TEXT_LENGTH), result.getRight()));
+				return null;
+			});
+		}
+
+		// Write the counters
+		final int checkpoint = next;
+		template.execute(s -> {
+			final BatchTask entity = repository.findOneExpected(id);
+			entity.setStart(task.getStatus().getStart());
+			entity.setEnd(task.getStatus().getEnd());
+			entity.setDone(task.getStatus().getDone());
+			entity.setFailures(task.getStatus().getFailures());
+			entity.setStatus(task.getStatus().getStatus());
+			entity.setCheckpoint(checkpoint);
+			entity.setHeartbeat(new Date());
+			entity.setErrors(toErrors(task));
+			return null;
+		});
+		task.setCheckpoint(checkpoint);
+		log.info("Task {} of {} is checkpointed at {}/{}", task.getId(), task.getPrincipal(), checkpoint, entries.size());
+	}
+
+	/**
+	 * Save the result of the given entry when it is proceeded.
+	 * 
+	 * @return <code>true</code> when the entry is proceeded.
+	 */
+	private boolean snapshot(final BatchElement entry, final int line, final Map<Integer, Triple<Boolean, String, Integer>> results) {
+		final Boolean status = entry.getStatus();
+		if (status == null) {
+			return false;
+		}
+		results.put(line, Triple.of(status, entry.getStatusText(), entry.getError()));
+		return true;
+	}
+
+	private BatchTaskEntry toEntity(final BatchTask task, final int line, final BatchElement element) {
+		final BatchTaskEntry entry = new BatchTaskEntry();
+		entry.setTask(task);
+		entry.setLine(line);
+		entry.setStatus(element.getStatus());
+		entry.setStatusText(StringUtils.abbreviate(element.getStatusText(), BatchTaskEntry.STATUS_TEXT_LENGTH));
+		entry.setError(element.getError());
+		try {
+			entry.setData(MAPPER.writeValueAsString(element));
+		} catch (final JsonProcessingException e) {
+			throw new TechnicalException("Unable to serialize the batch entry", e);
+		}
+		return entry;
+	}
+
+	/**
+	 * Return the JSON serialized errors of a task, referred by its failed entries.
+	 */
+	private String toErrors(final BatchTaskVo<?> task) {
+		if (task.getErrors().isEmpty()) {
+			return null;
+		}
+		try {
+			return MAPPER.writeValueAsString(task.getErrors());
+		} catch (final JsonProcessingException e) {
+			throw new TechnicalException("Unable to serialize the batch errors", e);
+		}
+	}
+
+	/**
+	 * Return the errors of a stored task.
+	 */
+	private List<BatchError> toErrors(final BatchTask entity) {
+		if (entity.getErrors() == null) {
+			return Collections.emptyList();
+		}
+		try {
+			return MAPPER.readValue(entity.getErrors(), new TypeReference<List<BatchError>>() {
+				// Type reference only
+			});
+		} catch (final IOException e) {
+			throw new TechnicalException("Unable to read the stored batch errors", e);
+		}
+	}
+
+	/**
+	 * Return a stored task, without its entries.
+	 * 
+	 * @param principal
+	 *            User principal requesting the import.
+	 * @param id
+	 *            The public identifier of the task.
+	 * @return The task or <code>null</code>.
+	 */
+	public BatchTaskVo<BatchElement> findTask(final String principal, final long id) {
+		final BatchTask entity = repository.findBy(principal, id);
+		if (entity == null) {
+			return null;
+		}
+		return toVo(entity);
+	}
+
+	private BatchTaskVo<BatchElement> toVo(final BatchTask entity) {
+		final BatchTaskVo<BatchElement> task = new BatchTaskVo<>();
+		task.setId(entity.getBatch());
+		task.setPrincipal(entity.getPrincipal());
+		task.setEntries(new ArrayList<>());
+		task.setStored(true);
+		task.setColumns(entity.getColumns() == null ? null : entity.getColumns().split(","));
+		task.getStatus().setStart(entity.getStart());
+		task.getStatus().setNotBefore(entity.getNotBefore());
+		task.getStatus().setEnd(entity.getEnd());
+		task.getStatus().setEntries(entity.getEntries());
+		task.getStatus().setDone(entity.getDone());
+		task.getStatus().setFailures(entity.getFailures());
+		task.getStatus().setStatus(entity.getStatus());
+		task.getErrors().addAll(toErrors(entity));
+		return task;
+	}
+
+	/**
+	 * Return the stored entries of a task.
+	 * 
+	 * @param principal
+	 *            User principal requesting the import.
+	 * @param id
+	 *            The public identifier of the task.
+	 * @param status
+	 *            The optional status to filter. When <code>null</code>, all entries are returned.
+	 * @param page
+	 *            The {@link Pageable} context.
+	 * @return The entries of the task or <code>null</code> when the task is not stored.
+	 */
+	public Page<BatchElement> findEntries(final String principal, final long id, final Boolean status, final Pageable page) {
+		final BatchTask entity = repository.findBy(principal, id);
+		if (entity == null) {
+			return null;
+		}
+		return entryRepository.findAll(entity.getId(), status, page).map(e -> toElement(entity.getType(), e));
+	}
+
+	private BatchElement toElement(final String type, final BatchTaskEntry entry) {
+		final BatchElement element;
+		try {
+			element = MAPPER.readValue(entry.getData(), Class.forName(type).asSubclass(BatchElement.class));
+		} catch (final IOException | ClassNotFoundException e) {
+			throw new TechnicalException("Unable to read the stored batch entry", e);
+		}
+
+		// The status may have been updated since the entry has been serialized
+		element.setStatus(entry.getStatus());
+		element.setStatusText(entry.getStatusText());
+		element.setError(entry.getError());
+		return element;
+	}
+
+	/**
+	 * Return the tasks of a resource interrupted before their completion, such as by a restart.
+	 * 
+	 * @param resource
+	 *            The resource class name able to resume the tasks.
+	 * @return The interrupted tasks, without their entries.
+	 */
+	public List<BatchTask> findInterrupted(final String resource) {
+		return repository.findAllInterrupted(resource);
+	}
+
+	/**
+	 * Take the ownership of an interrupted task, so it is resumed once, by this node. The task must not be confirmed
+	 * by its owner for a while.
+	 * 
+	 * @param entity
+	 *            The interrupted task.
+	 * @return <code>true</code> when this node has taken the ownership of this task.
+	 */
+	public boolean claim(final BatchTask entity) {
+		final long now = System.currentTimeMillis();
+		return new TransactionTemplate(transactionManager)
+				.execute(s -> repository.claim(entity.getId(), NODE, new Date(now), new Date(now - LEASE_DURATION)) == 1);
+	}
+
+	/**
+	 * Confirm this node is running its tasks, so they are not resumed by another node.
+	 */
+	public void heartbeat() {
+		new TransactionTemplate(transactionManager).execute(s -> repository.heartbeat(NODE, new Date()));
+	}
+
+	/**
+	 * Return an interrupted task with all its entries, ready to be resumed from its last checkpoint.
+	 * 
+	 * @param entity
+	 *            The interrupted task.
+	 * @return The task to resume.
+	 */
+	public BatchTaskVo<BatchElement> load(final BatchTask entity) {
+		final BatchTaskVo<BatchElement> task = toVo(entity);
+		task.setStored(false);
+		task.setResumed(true);
+		task.setPersisted(true);
+		task.setResource(entity.getResource());
+		task.setParallel(Math.max(1, entity.getParallel()));
+		task.setOrdered(entity.isOrdered());
+		task.setElastic(entity.isElastic());
+		task.setDryRun(entity.isDryRun());
+		if (entity.getRate() > 0 || entity.isAdaptive()) {
+			task.setBucket(new TokenBucket(entity.getRate(), entity.isAdaptive()));
+		}
+		task.setCheckpoint(entity.getCheckpoint());
+		task.setEntries(new TransactionTemplate(transactionManager).execute(
+				s -> entryRepository.findAllBy(entity.getId()).stream().map(e -> toElement(entity.getType(), e)).collect(Collectors.toList())));
+		if (task.isDryRun()) {
+			// Restore the plan of the entries checked before the interruption
+			task.getEntries().stream().map(e -> toPlan(task, e)).filter(Objects::nonNull).forEach(task.getStatus()::addPlan);
+		}
+		return task;
+	}
+
+	/**
+	 * Return the verdict of a checked entry of a dry-run : the planned operation or the error key.
+	 */
+	private String toPlan(final BatchTaskVo<?> task, final BatchElement entry) {
+		if (entry.getStatus() == null) {
+			return null;
+		}
+		if (entry.getStatus()) {
+			return entry.getStatusText();
+		}
+		return entry.getError() == null ? null : "error:" + task.getErrors().get(entry.getError()).getKey();
+	}
+
+	/**
+	 * Delete the tasks completed for more than {@value #RETENTION_DAYS} days. Executed periodically.
+	 */
+	public void purge() {
+		final Date limit = DateUtils.addDays(new Date(), -RETENTION_DAYS);
+		new TransactionTemplate(transactionManager).execute(s -> {
+			entryRepository.deleteAllBefore(limit);
+			return repository.deleteAllBefore(limit);
+		});
+	}
+}
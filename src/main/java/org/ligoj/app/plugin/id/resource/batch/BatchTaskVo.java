@@ -1,6 +1,9 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -20,7 +23,7 @@ public class BatchTaskVo<B extends BatchElement> {
 	private long id;
 
 	/**
-	 * Entries to persist.
+	 * Entries to persist. In streaming mode, only the failed entries.
 	 */
 	@Setter
 	private List<B> entries;
@@ -30,10 +33,112 @@ public class BatchTaskVo<B extends BatchElement> {
 	 */
 	private ImportStatus status = new ImportStatus();
 
+	/**
+	 * Distinct failures of the entries. The failed entries refer to an error by its identifier, the position in this
+	 * list.
+	 */
+	private final List<BatchError> errors = new CopyOnWriteArrayList<>();
+
 	/**
 	 * User principal requesting the import.
 	 */
 	@Setter
 	private String principal;
 
+	/**
+	 * When <code>true</code>, the entries are proceeded from the {@link #feed} as they are read, and only the failed
+	 * ones are kept.
+	 */
+	@Setter
+	private boolean streaming;
+
+	/**
+	 * Amount of workers proceeding the entries. When greater than 1, the entries are partitioned by key and the
+	 * partitions are proceeded concurrently.
+	 */
+	@Setter
+	private int parallel = 1;
+
+	/**
+	 * When <code>true</code>, the entries are proceeded by level of dependency, parents first.
+	 */
+	@Setter
+	private boolean ordered;
+
+	/**
+	 * When <code>true</code>, this task runs on the elastic pool.
+	 */
+	@Setter
+	private boolean elastic;
+
+	/**
+	 * When <code>true</code>, the entries are only checked, and their status text is the planned operation.
+	 */
+	@Setter
+	private boolean dryRun;
+
+	/**
+	 * The uploaded column names, in order. <code>null</code> when the entries have not been uploaded.
+	 */
+	@Setter
+	private String[] columns;
+
+	/**
+	 * When <code>true</code>, the task is completed and its entries are available from the persistent store. The
+	 * {@link #entries} may be released.
+	 */
+	@Setter
+	private boolean stored;
+
+	/**
+	 * The resource class name able to resume this task after a restart. When <code>null</code>, this task is not
+	 * checkpointed.
+	 */
+	@Setter
+	@JsonIgnore
+	private String resource;
+
+	/**
+	 * When <code>true</code>, this task has been interrupted and is resumed from its last checkpoint : the entries
+	 * having a status are not proceeded again.
+	 */
+	@Setter
+	private boolean resumed;
+
+	/**
+	 * When <code>true</code>, this task and its entries are in the persistent store, and are only checkpointed from
+	 * now.
+	 */
+	@Setter
+	@JsonIgnore
+	private boolean persisted;
+
+	/**
+	 * The position of the first entry not yet proceeded at the last checkpoint.
+	 */
+	@Setter
+	@JsonIgnore
+	private int checkpoint;
+
+	/**
+	 * The token bucket limiting the writes of this task. <code>null</code> when not limited.
+	 */
+	@Setter
+	@JsonIgnore
+	private TokenBucket bucket;
+
+	/**
+	 * The identifier of the submission of this task, when deduplicated. <code>null</code> when not deduplicated.
+	 */
+	@Setter
+	@JsonIgnore
+	private String submission;
+
+	/**
+	 * Entries waiting to be proceeded in streaming mode.
+	 */
+	@Setter
+	@JsonIgnore
+	private BatchFeed<B> feed;
+
 }
@@ -0,0 +1,26 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+
+/**
+ * Global metrics of the batch tasks since the startup.
+ */
+@Component
+public class BatchTelemetry {
+
+	/**
+	 * Metrics of all batch tasks.
+	 */
+	@Getter
+	private final BatchMetrics global = new BatchMetrics();
+
+	/**
+	 * Start the global metrics.
+	 */
+	public BatchTelemetry() {
+		global.start();
+	}
+
+}
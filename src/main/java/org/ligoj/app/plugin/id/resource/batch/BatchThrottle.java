@@ -0,0 +1,57 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.ligoj.app.iam.IamProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rate limiting of the batch writes. A token bucket is shared by all batch tasks writing to the same IAM provider, and
+ * each task may have its own token bucket.
+ */
+@Component
+public class BatchThrottle {
+
+	@Autowired
+	protected IamProvider[] iamProvider;
+
+	/**
+	 * Maximal rate of the batch writes shared by all tasks of an IAM provider, in writes per second. When not
+	 * positive, and not adaptive, there is no shared limit.
+	 */
+	@Value("${id.batch.rate:0}")
+	protected double rate;
+
+	/**
+	 * When <code>true</code>, the shared rate follows the observed write latency.
+	 */
+	@Value("${id.batch.adaptive:false}")
+	protected boolean adaptive;
+
+	/**
+	 * Shared token buckets. Key is the IAM provider class.
+	 */
+	private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+	/**
+	 * Return the token buckets a task has to go through before each write.
+	 * 
+	 * @param task
+	 *            The batch task.
+	 * @return The token buckets. May be empty.
+	 */
+	public List<TokenBucket> getBuckets(final BatchTaskVo<?> task) {
+		final List<TokenBucket> result = new ArrayList<>(2);
+		if (rate > 0 || adaptive) {
+			result.add(buckets.computeIfAbsent(iamProvider[0].getClass().getName(), p -> new TokenBucket(rate, adaptive)));
+		}
+		CollectionUtils.addIgnoreNull(result, task.getBucket());
+		return result;
+	}
+}
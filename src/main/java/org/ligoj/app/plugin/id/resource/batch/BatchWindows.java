@@ -0,0 +1,89 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Named maintenance windows of the batch tasks, such as off-peak hours. A window is a daily time range, in the server
+ * time zone, and may span midnight.
+ */
+@Component
+public class BatchWindows {
+
+	/**
+	 * The maintenance windows, comma separated, such as "night=22:00-06:00,lunch=12:00-14:00".
+	 */
+	@Value("${id.batch.windows:}")
+	protected String windows;
+
+	/**
+	 * The parsed maintenance windows : the opening and the closing times. Key is the window name.
+	 */
+	private final Map<String, LocalTime[]> ranges = new HashMap<>();
+
+	/**
+	 * Parse the configured windows, so a malformed configuration is reported at the startup.
+	 * 
+	 * @throws IllegalStateException
+	 *             When a window is malformed.
+	 */
+	@PostConstruct
+	public void initialize() {
+		ranges.clear();
+		for (final String window : StringUtils.split(StringUtils.defaultString(windows), ',')) {
+			final String name = StringUtils.substringBefore(window, "=").trim();
+			final String range = StringUtils.substringAfter(window, "=");
+			if (name.isEmpty() || !range.contains("-")) {
+				throw new IllegalStateException("Invalid batch window '" + window + "', expected format is name=HH:mm-HH:mm");
+			}
+			try {
+				ranges.put(name, new LocalTime[] { LocalTime.parse(StringUtils.substringBefore(range, "-").trim()),
+						LocalTime.parse(StringUtils.substringAfter(range, "-").trim()) });
+			} catch (final DateTimeParseException e) {
+				throw new IllegalStateException("Invalid batch window '" + window + "', expected format is name=HH:mm-HH:mm", e);
+			}
+		}
+	}
+
+	/**
+	 * Return the first time a task may start within the given window, not before the given time.
+	 *
+	 * @param name
+	 *            The window name.
+	 * @param from
+	 *            The minimal time, in milliseconds.
+	 * @return The given time when it is within the window, or the next opening of the window, in milliseconds.
+	 */
+	public long getNext(final String name, final long from) {
+		final LocalTime[] range = ranges.get(name);
+		if (range == null) {
+			throw new ValidationJsonException("window", BusinessException.KEY_UNKNOW_ID, "0", "window", "1", name);
+		}
+		final LocalTime open = range[0];
+		final LocalTime close = range[1];
+		final ZoneId zone = ZoneId.systemDefault();
+		final LocalDateTime time = LocalDateTime.ofInstant(new Date(from).toInstant(), zone);
+		final LocalTime day = time.toLocalTime();
+		final boolean opened = open.isBefore(close) ? !day.isBefore(open) && day.isBefore(close) : !day.isBefore(open) || day.isBefore(close);
+		if (opened) {
+			return from;
+		}
+
+		// Wait for the next opening, today or tomorrow
+		final LocalDateTime next = day.isBefore(open) ? time.with(open) : time.plusDays(1).with(open);
+		return next.atZone(zone).toInstant().toEpochMilli();
+	}
+}
@@ -2,15 +2,24 @@ package org.ligoj.app.plugin.id.resource.batch;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
+import java.util.stream.Collectors;
 
+import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 
+import org.apache.commons.collections4.CollectionUtils;
 import org.apache.cxf.jaxrs.ext.multipart.Multipart;
+import org.ligoj.app.iam.GroupOrg;
+import org.ligoj.app.plugin.id.resource.GroupResource;
 import org.ligoj.app.plugin.id.resource.IdentityResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
@@ -26,15 +35,27 @@ public class GroupBatchLdapResource extends AbstractBatchResource {
 	 */
 	private static final String[] DEFAULT_IMPORT_CSV_HEADERS = { "name", "type", "parent", "owner", "assistant", "department" };
 
+	@Autowired
+	protected GroupResource resource;
+
+	/**
+	 * Maximal rate of the member removals of a task emptying a group, in writes per second. When not positive, only
+	 * the shared rate applies.
+	 */
+	@Value("${id.batch.empty.rate:50}")
+	protected double emptyRate;
+
 	/**
 	 * Upload a file of LDAP entries to create or update groups. The whole entry is replaced.
 	 * 
 	 * @param uploadedFile
-	 *            LDAP entries files to import. Currently support only CSV format.
+	 *            LDAP entries files to import, in CSV, JSON or NDJSON format, optionally gzip or zip compressed.
 	 * @param columns
 	 *            the CSV header names.
 	 * @param encoding
 	 *            CSV encoding. Default is UTF-8.
+	 * @param options
+	 *            the submission options.
 	 * @return the import identifier.
 	 */
 	@POST
@@ -42,7 +63,34 @@ public class GroupBatchLdapResource extends AbstractBatchResource {
 	@Path("full")
 	public long full(@Multipart(value = "csv-file") final InputStream uploadedFile,
 			@Multipart(value = "columns", required = false) final String[] columns,
-			@Multipart(value = "encoding", required = false) final String encoding) throws IOException {
-		return batch(uploadedFile, columns, encoding, DEFAULT_IMPORT_CSV_HEADERS, GroupImportEntry.class, GroupFullLdapTask.class);
+			@Multipart(value = "encoding", required = false) final String encoding, @BeanParam final BatchOptions options)
+			throws IOException {
+		return batch(uploadedFile, columns, encoding, DEFAULT_IMPORT_CSV_HEADERS, GroupImportEntry.class, GroupFullLdapTask.class, options);
+	}
+
+	/**
+	 * Empty this group by removing all members if supported by the LDAP schema. The members are removed in background,
+	 * the progress is available from {@link #getImportStatus(long)}.
+	 * 
+	 * @param id
+	 *            The group to empty.
+	 * @return The identifier of the task removing the members.
+	 */
+	@POST
+	@Path("empty/{id}")
+	public long empty(@PathParam("id") final String id) {
+		// Check the group exists and can be updated by the current user
+		final GroupOrg group = resource.findByIdForWrite(id);
+
+		// Perform the update
+		final List<GroupMemberEntry> entries = CollectionUtils.emptyIfNull(group.getMembers()).stream().sorted().map(u -> {
+			final GroupMemberEntry entry = new GroupMemberEntry();
+			entry.setGroup(group.getId());
+			entry.setUser(u);
+			return entry;
+		}).collect(Collectors.toList());
+		final BatchOptions options = new BatchOptions();
+		options.setRate(emptyRate);
+		return schedule(entries, GroupEmptyLdapTask.class, options);
 	}
 }
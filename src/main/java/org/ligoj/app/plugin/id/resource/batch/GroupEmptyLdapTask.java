@@ -0,0 +1,65 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ligoj.app.iam.UserOrg;
+import org.ligoj.app.plugin.id.resource.GroupResource;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+/**
+ * Group LDAP membership removal from list of members. The members are removed one by one, the LDAP availability for
+ * the other users is preserved by the task and the provider throttles.
+ */
+@Component
+@Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+public class GroupEmptyLdapTask extends AbstractLdapBatchTask<GroupMemberEntry> {
+
+	@Autowired
+	protected GroupResource resource;
+
+	/**
+	 * Snapshot of the users, loaded once for all the members. Key is the normalized login.
+	 */
+	private final Map<String, UserOrg> users = new ConcurrentHashMap<>();
+
+	/**
+	 * The users are loaded once for all the members.
+	 */
+	@Override
+	protected void prefetch(final List<GroupMemberEntry> entries) {
+		users.putAll(resource.findAllUsers());
+	}
+
+	@Override
+	protected String getOperation(final GroupMemberEntry entry) {
+		return "remove";
+	}
+
+	@Override
+	protected void doBatch(final GroupMemberEntry entry) {
+		// Remove the membership, the user is read only when not prefetched
+		final UserOrg user = users.get(entry.getUser());
+		if (user == null) {
+			resource.removeUser(entry.getGroup(), entry.getUser());
+		} else {
+			resource.removeUser(entry.getGroup(), user);
+		}
+	}
+
+	@Override
+	protected String plan(final GroupMemberEntry entry) {
+		// The user must still be a member of this group
+		if (!resource.getRepository().findByIdExpected(entry.getGroup()).getMembers().contains(entry.getUser())) {
+			throw new ValidationJsonException("user", BusinessException.KEY_UNKNOW_ID, "0", "user", "1", entry.getUser());
+		}
+		return "remove";
+	}
+
+}
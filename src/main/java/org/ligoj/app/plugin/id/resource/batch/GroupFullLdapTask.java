@@ -1,9 +1,23 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
 import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.api.Normalizer;
+import org.ligoj.app.plugin.id.DependencyUtils;
 import org.ligoj.app.plugin.id.resource.ContainerScopeResource;
 import org.ligoj.app.plugin.id.resource.GroupEditionVo;
 import org.ligoj.app.plugin.id.resource.GroupResource;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
@@ -16,16 +30,119 @@ import org.springframework.stereotype.Component;
 @Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class GroupFullLdapTask extends AbstractLdapBatchTask<GroupImportEntry> {
 
+	private static final String PARENT = "parent";
+
+	private static final String GROUP = "group";
+
 	@Autowired
 	protected GroupResource resource;
 
 	@Autowired
 	protected ContainerScopeResource containerScopeResource;
 
+	/**
+	 * DN of the groups planned to be created by a dry-run, by normalized name. The following groups of the same task
+	 * may be created within these groups.
+	 */
+	private final Map<String, String> planned = new ConcurrentHashMap<>();
+
+	/**
+	 * Top-level ancestor of the read groups not yet proceeded, by normalized name. A group is evicted once proceeded,
+	 * so this index is bounded by the pending entries, even in streaming mode.
+	 */
+	private final Map<String, String> roots = new ConcurrentHashMap<>();
+
+	/**
+	 * The groups sharing the same top-level ancestor are proceeded in order, so a parent is created before its
+	 * children read after it. In ordered mode, the parents of a level already exist, so the groups are spread by name.
+	 */
+	@Override
+	protected String getPartition(final GroupImportEntry entry) {
+		final String name = Normalizer.normalize(StringUtils.trimToEmpty(entry.getName()));
+		if (task.isOrdered()) {
+			return name;
+		}
+		final String parent = getParent(entry);
+		final String root = parent == null ? name : roots.getOrDefault(parent, parent);
+		roots.put(name, root);
+		return root;
+	}
+
+	/**
+	 * A proceeded group exists, or has failed : its children read after it do not need to follow it anymore.
+	 */
+	@Override
+	protected void release(final GroupImportEntry entry) {
+		final String name = Normalizer.normalize(StringUtils.trimToEmpty(entry.getName()));
+		roots.remove(name);
+	}
+
+	/**
+	 * The groups are split by nesting depth. The groups involved in a cycle, having an unknown parent, or having a
+	 * rejected ancestor are rejected before any creation.
+	 */
+	@Override
+	protected List<List<GroupImportEntry>> toLevels(final List<GroupImportEntry> entries) {
+		final List<List<GroupImportEntry>> levels = DependencyUtils.toLevels(entries, e -> Normalizer.normalize(e.getName()), this::getParent);
+
+		// Reject the groups involved in a cycle
+		final Set<GroupImportEntry> placed = Collections.newSetFromMap(new IdentityHashMap<>());
+		levels.forEach(placed::addAll);
+		entries.stream().filter(e -> !placed.contains(e))
+				.forEach(e -> reject(e, new ValidationJsonException(PARENT, "container-parent-cycle", "0", GROUP, "1", e.getName())));
+
+		// Reject the groups whose parent is neither imported nor existing, and their descendants
+		final Set<String> imported = placed.stream().map(e -> Normalizer.normalize(e.getName())).collect(Collectors.toSet());
+		final Map<String, Boolean> existing = new HashMap<>();
+		final Set<String> rejected = new HashSet<>();
+		for (final List<GroupImportEntry> level : levels) {
+			level.removeIf(e -> {
+				final String parent = getParent(e);
+				if (parent == null || !rejected.contains(parent)
+						&& (imported.contains(parent) || existing.computeIfAbsent(parent, p -> resource.findById(p) != null))) {
+					return false;
+				}
+				rejected.add(Normalizer.normalize(e.getName()));
+				reject(e, new ValidationJsonException(PARENT, BusinessException.KEY_UNKNOW_ID, "0", GROUP, "1", e.getParent()));
+				return true;
+			});
+		}
+		return levels;
+	}
+
+	/**
+	 * Return the normalized parent of the given entry.
+	 */
+	private String getParent(final GroupImportEntry entry) {
+		return StringUtils.trimToNull(Normalizer.normalize(entry.getParent()));
+	}
+
+	@Override
+	protected String getOperation(final GroupImportEntry entry) {
+		return "create";
+	}
+
 	@Override
 	protected void doBatch(final GroupImportEntry entry) throws Exception {
+		// Create the group
+		resource.create(toEdition(entry));
+	}
+
+	@Override
+	protected String plan(final GroupImportEntry entry) {
+		// The groups planned before are considered as created
+		final String name = Normalizer.normalize(entry.getName());
+		final String newDn = resource.checkCreate(toEdition(entry), planned);
+		if (planned.putIfAbsent(name, newDn) != null) {
+			throw new ValidationJsonException("name", "already-exist", "0", GROUP, "1", entry.getName());
+		}
+		return "create";
+	}
 
-		// Copy the group information
+	/**
+	 * Copy the group information of the given entry.
+	 */
+	private GroupEditionVo toEdition(final GroupImportEntry entry) {
 		final GroupEditionVo edition = new GroupEditionVo();
 		edition.setName(entry.getName());
 		edition.setParent(StringUtils.trimToNull(entry.getParent()));
@@ -35,9 +152,7 @@ public class GroupFullLdapTask extends AbstractLdapBatchTask<GroupImportEntry> {
 		edition.setAssistants(toList(entry.getAssistant()));
 		edition.setDepartments(toList(entry.getDepartment()));
 		edition.setOwners(toList(entry.getOwner()));
-
-		// Create the user
-		resource.create(edition);
+		return edition;
 	}
 
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
+import java.util.List;
+
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 
@@ -23,17 +25,17 @@ public class GroupImportEntry implements BatchElement {
 	/**
 	 * Department number or name, multi-valued. May be used to link user department attribute. Must be UID of the related users.
 	 */
-	private String department;
+	private List<String> department;
 
 	/**
 	 * Assistant of this group, multi-valued. Must be UID of the related users.
 	 */
-	private String assistant;
+	private List<String> assistant;
 
 	/**
 	 * Owner of this group, multi-valued. Must be UID of the related users.
 	 */
-	private String owner;
+	private List<String> owner;
 
 	/**
 	 * The type of this container.
@@ -42,13 +44,19 @@ public class GroupImportEntry implements BatchElement {
 	private String type;
 
 	/**
-	 * Import status. <code>null</code> when not proceeded.
+	 * Import status. <code>null</code> when not proceeded. Set after the status text, so a proceeded entry is complete
+	 * for the other threads.
 	 */
-	private Boolean status;
+	private volatile Boolean status;
 
 	/**
 	 * Import status text. <code>null</code> when not proceeded.
 	 */
 	private String statusText;
 
+	/**
+	 * Identifier of the failure in the errors of the task. <code>null</code> when not failed.
+	 */
+	private Integer error;
+
 }
@@ -0,0 +1,43 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Group membership entry.
+ */
+@Getter
+@Setter
+public class GroupMemberEntry implements BatchElement {
+
+	/**
+	 * The normalized group identifier.
+	 */
+	@NotNull
+	private String group;
+
+	/**
+	 * The member identifier.
+	 */
+	@NotNull
+	private String user;
+
+	/**
+	 * Import status. <code>null</code> when not proceeded. Set after the status text, so a proceeded entry is complete
+	 * for the other threads.
+	 */
+	private volatile Boolean status;
+
+	/**
+	 * Import status text. <code>null</code> when not proceeded.
+	 */
+	private String statusText;
+
+	/**
+	 * Identifier of the failure in the errors of the task. <code>null</code> when not failed.
+	 */
+	private Integer error;
+
+}
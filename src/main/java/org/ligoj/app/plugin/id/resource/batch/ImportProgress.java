@@ -0,0 +1,86 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.Objects;
+
+import lombok.Getter;
+
+/**
+ * Import progress computed from an {@link ImportStatus}.
+ */
+@Getter
+public class ImportProgress {
+
+	/**
+	 * Amount of proceeded entries.
+	 */
+	private final int done;
+
+	/**
+	 * Amount of failed entries.
+	 */
+	private final int failures;
+
+	/**
+	 * Total amount of entries to proceed. In streaming mode, this is the amount of entries read so far.
+	 */
+	private final int entries;
+
+	/**
+	 * Amount of proceeded entries per second since the start.
+	 */
+	private final double throughput;
+
+	/**
+	 * Estimated remaining time in milliseconds. <code>null</code> while the throughput is unknown.
+	 */
+	private final Long eta;
+
+	/**
+	 * Import status. <code>null</code> when not proceeded.
+	 */
+	private final Boolean status;
+
+	/**
+	 * Execution state. <code>null</code> while not started.
+	 */
+	private final ImportState state;
+
+	/**
+	 * Build the progress of the given status.
+	 * 
+	 * @param status
+	 *            The import status.
+	 * @param now
+	 *            The current time in milliseconds.
+	 */
+	public ImportProgress(final ImportStatus status, final long now) {
+		this.done = status.getDone();
+		this.failures = status.getFailures();
+		this.entries = status.getEntries();
+		this.status = status.getStatus();
+		this.state = status.getState();
+
+		// Compute the throughput and the ETA from the elapsed time
+		final long elapsed = status.getStart() == null ? 0 : (status.getEnd() == null ? now : status.getEnd().getTime()) - status.getStart().getTime();
+		this.throughput = elapsed > 0 ? done * 1000d / elapsed : 0;
+		if (status.getEnd() != null) {
+			this.eta = 0L;
+		} else if (throughput > 0) {
+			this.eta = (long) (Math.max(0, entries - done) * 1000d / throughput);
+		} else {
+			this.eta = null;
+		}
+	}
+
+	/**
+	 * Indicate the counters, the status or the state differ from the given progress.
+	 * 
+	 * @param other
+	 *            The progress to compare. May be <code>null</code>.
+	 * @return <code>true</code> when this progress is a new one.
+	 */
+	public boolean isChanged(final ImportProgress other) {
+		return other == null || done != other.done || failures != other.failures || entries != other.entries || !Objects.equals(status, other.status)
+				|| state != other.state;
+	}
+}
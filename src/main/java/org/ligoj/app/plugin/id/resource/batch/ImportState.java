@@ -0,0 +1,37 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+/**
+ * Execution state of an import.
+ */
+public enum ImportState {
+
+	/**
+	 * The uploaded entries are being read and validated.
+	 */
+	PARSING,
+
+	/**
+	 * The entries are validated, the processing waits for its scheduled time.
+	 */
+	QUEUED,
+
+	/**
+	 * The entries are being proceeded.
+	 */
+	RUNNING,
+
+	/**
+	 * The processing is suspended until it is resumed or canceled.
+	 */
+	PAUSED,
+
+	/**
+	 * The processing has been stopped, the remaining entries are not proceeded.
+	 */
+	CANCELED,
+
+	/**
+	 * All entries have been proceeded.
+	 */
+	COMPLETED
+}
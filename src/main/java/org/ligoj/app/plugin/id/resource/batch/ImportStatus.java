@@ -1,7 +1,11 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -17,6 +21,11 @@ public class ImportStatus {
 	 */
 	private Date start;
 
+	/**
+	 * Scheduled time of the processing. <code>null</code> when the processing starts as soon as possible.
+	 */
+	private Date notBefore;
+
 	/**
 	 * Transaction end. <code>null</code> when not finished.
 	 */
@@ -25,15 +34,114 @@ public class ImportStatus {
 	/**
 	 * Amount of proceeded entries.
 	 */
-	private int done;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final AtomicInteger done = new AtomicInteger();
+
+	/**
+	 * Amount of failed entries.
+	 */
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final AtomicInteger failures = new AtomicInteger();
 
 	/**
-	 * Total amount of entries to proceed.
+	 * Total amount of entries to proceed. In streaming mode, this is the amount of entries read so far.
 	 */
 	private int entries;
 
 	/**
-	 * Import status. <code>null</code> when not proceeded.
+	 * Import status. <code>null</code> when not proceeded, <code>false</code> when canceled.
 	 */
 	private Boolean status;
+
+	/**
+	 * Execution state. <code>null</code> while not started.
+	 */
+	private volatile ImportState state;
+
+	/**
+	 * Error of the uploaded entries, such as an invalid header or entry, or the unexpected failure of the task.
+	 * <code>null</code> when there is no error, or when the error has been reported to the submitter.
+	 */
+	private String error;
+
+	/**
+	 * Aggregated plan of a dry-run : amount of entries by planned operation or by error key. Empty when the entries
+	 * are really proceeded.
+	 */
+	@Setter(AccessLevel.NONE)
+	private final Map<String, Integer> plan = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Metrics of this import.
+	 */
+	@Setter(AccessLevel.NONE)
+	private final BatchMetrics metrics = new BatchMetrics();
+
+	/**
+	 * Return the amount of proceeded entries.
+	 * 
+	 * @return Amount of proceeded entries.
+	 */
+	public int getDone() {
+		return done.get();
+	}
+
+	/**
+	 * Set the amount of proceeded entries.
+	 * 
+	 * @param done
+	 *            Amount of proceeded entries.
+	 */
+	public void setDone(final int done) {
+		this.done.set(done);
+	}
+
+	/**
+	 * Increment the amount of proceeded entries.
+	 * 
+	 * @return The new amount of proceeded entries.
+	 */
+	public int incrementDone() {
+		return done.incrementAndGet();
+	}
+
+	/**
+	 * Count an entry in the plan of a dry-run.
+	 * 
+	 * @param verdict
+	 *            The planned operation or the error key.
+	 */
+	public void addPlan(final String verdict) {
+		plan.merge(verdict, 1, Integer::sum);
+	}
+
+	/**
+	 * Return the amount of failed entries.
+	 * 
+	 * @return Amount of failed entries.
+	 */
+	public int getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * Set the amount of failed entries.
+	 * 
+	 * @param failures
+	 *            Amount of failed entries.
+	 */
+	public void setFailures(final int failures) {
+		this.failures.set(failures);
+	}
+
+	/**
+	 * Increment the amount of failed entries.
+	 * 
+	 * @return The new amount of failed entries.
+	 */
+	public int incrementFailures() {
+		return failures.incrementAndGet();
+	}
 }
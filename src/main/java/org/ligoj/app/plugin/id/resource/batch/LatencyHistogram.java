@@ -0,0 +1,145 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets. The percentiles are estimated with the upper bound of the matching bucket.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Upper bounds of the buckets, in milliseconds. The last bucket has no upper bound.
+	 */
+	private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+	private final LongAdder[] counts = new LongAdder[BOUNDS.length + 1];
+
+	/**
+	 * Total latency in nanoseconds.
+	 */
+	private final LongAdder total = new LongAdder();
+
+	/**
+	 * Maximal latency in nanoseconds.
+	 */
+	private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+	/**
+	 * Build an empty histogram.
+	 */
+	public LatencyHistogram() {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Record a latency.
+	 *
+	 * @param nanos
+	 *            The latency in nanoseconds.
+	 */
+	public void record(final long nanos) {
+		final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		int bucket = 0;
+		while (bucket < BOUNDS.length && millis >= BOUNDS[bucket]) {
+			bucket++;
+		}
+		counts[bucket].increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * Return the amount of recorded latencies.
+	 *
+	 * @return The amount of recorded latencies.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (final LongAdder bucket : counts) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	/**
+	 * Return the mean latency.
+	 *
+	 * @return The mean latency in milliseconds.
+	 */
+	public double getMean() {
+		final long count = getCount();
+		return count == 0 ? 0 : total.sum() / 1_000_000d / count;
+	}
+
+	/**
+	 * Return the maximal latency.
+	 *
+	 * @return The maximal latency in milliseconds.
+	 */
+	public double getMax() {
+		return max.get() / 1_000_000d;
+	}
+
+	/**
+	 * Return the cumulative amount of latencies by upper bound.
+	 *
+	 * @return The cumulative amount of latencies. Key is the upper bound in milliseconds, or "+Inf".
+	 */
+	public Map<String, Long> getBuckets() {
+		final Map<String, Long> buckets = new LinkedHashMap<>();
+		long count = 0;
+		for (int i = 0; i < counts.length; i++) {
+			count += counts[i].sum();
+			buckets.put(i < BOUNDS.length ? String.valueOf(BOUNDS[i]) : "+Inf", count);
+		}
+		return buckets;
+	}
+
+	/**
+	 * Return the estimated median latency.
+	 *
+	 * @return The estimated median latency in milliseconds.
+	 */
+	public double getP50() {
+		return getPercentile(0.5);
+	}
+
+	/**
+	 * Return the estimated 95th percentile latency.
+	 *
+	 * @return The estimated 95th percentile latency in milliseconds.
+	 */
+	public double getP95() {
+		return getPercentile(0.95);
+	}
+
+	/**
+	 * Return the estimated 99th percentile latency.
+	 *
+	 * @return The estimated 99th percentile latency in milliseconds.
+	 */
+	public double getP99() {
+		return getPercentile(0.99);
+	}
+
+	/**
+	 * Return the upper bound of the bucket containing the given percentile, or the maximal latency for the last bucket.
+	 */
+	private double getPercentile(final double percentile) {
+		final long rank = (long) Math.ceil(getCount() * percentile);
+		long count = 0;
+		for (int i = 0; i < BOUNDS.length; i++) {
+			count += counts[i].sum();
+			if (count >= rank) {
+				return Math.min(BOUNDS[i], getMax());
+			}
+		}
+		return getMax();
+	}
+}
@@ -0,0 +1,160 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+
+/**
+ * Token bucket limiting the rate of the writes. The burst is limited to one second of writes. In adaptive mode, the
+ * rate is halved when the observed write latency rises, and slowly restored when it gets back to its baseline.
+ */
+public class TokenBucket {
+
+	/**
+	 * Initial rate in adaptive mode when no rate is defined, in writes per second.
+	 */
+	public static final double DEFAULT_ADAPTIVE_RATE = 100;
+
+	/**
+	 * Minimal rate in adaptive mode, in writes per second.
+	 */
+	private static final double MIN_RATE = 1;
+
+	/**
+	 * Weight of the last latency in the moving average.
+	 */
+	private static final double ALPHA = 0.2;
+
+	/**
+	 * Weight of the last average latency in the baseline, when above the baseline. The baseline follows a lasting
+	 * latency rise slowly, so a rise is first seen as a slowdown.
+	 */
+	private static final double BASELINE_ALPHA = 0.02;
+
+	/**
+	 * Ratio of the baseline above which the latency is considered as rising.
+	 */
+	private static final double BACKOFF_THRESHOLD = 2;
+
+	/**
+	 * Ratio of the baseline below which the latency is considered as normal.
+	 */
+	private static final double RECOVERY_THRESHOLD = 1.2;
+
+	/**
+	 * Minimal delay between two rate adjustments, in nanoseconds.
+	 */
+	private static final long ADJUSTMENT_DELAY = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * The maximal rate in writes per second.
+	 */
+	@Getter
+	private final double maxRate;
+
+	/**
+	 * When <code>true</code>, the rate follows the observed write latency.
+	 */
+	@Getter
+	private final boolean adaptive;
+
+	/**
+	 * The current rate in writes per second.
+	 */
+	@Getter
+	private double rate;
+
+	/**
+	 * Available tokens. Negative when writes are waiting.
+	 */
+	private double tokens;
+
+	/**
+	 * Last refill time in nanoseconds.
+	 */
+	private long last = System.nanoTime();
+
+	/**
+	 * Moving average of the write latency, in milliseconds.
+	 */
+	private double latency;
+
+	/**
+	 * Normal average latency, in milliseconds. Follows the lower latencies right away, and the higher ones slowly.
+	 */
+	private double baseline;
+
+	/**
+	 * Last rate adjustment time in nanoseconds.
+	 */
+	private long adjusted = last;
+
+	/**
+	 * Build a token bucket.
+	 * 
+	 * @param rate
+	 *            The maximal rate in writes per second. When not positive in adaptive mode,
+	 *            {@value #DEFAULT_ADAPTIVE_RATE} is used.
+	 * @param adaptive
+	 *            When <code>true</code>, the rate follows the observed write latency.
+	 */
+	public TokenBucket(final double rate, final boolean adaptive) {
+		this.maxRate = rate > 0 ? rate : DEFAULT_ADAPTIVE_RATE;
+		this.adaptive = adaptive;
+		this.rate = maxRate;
+		this.tokens = maxRate;
+	}
+
+	/**
+	 * Take a token, waiting as needed.
+	 * 
+	 * @throws InterruptedException
+	 *             When the wait has been interrupted.
+	 */
+	public void acquire() throws InterruptedException {
+		final long wait;
+		synchronized (this) {
+			refill(System.nanoTime());
+			tokens--;
+			wait = tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+		}
+		TimeUnit.NANOSECONDS.sleep(wait);
+	}
+
+	private void refill(final long now) {
+		tokens = Math.min(rate, tokens + (now - last) * rate / TimeUnit.SECONDS.toNanos(1));
+		last = now;
+	}
+
+	/**
+	 * Record the latency of a successful write. Only used in adaptive mode.
+	 * 
+	 * @param nanos
+	 *            The write latency in nanoseconds.
+	 */
+	public synchronized void record(final long nanos) {
+		if (!adaptive) {
+			return;
+		}
+		final double millis = nanos / 1_000_000d;
+		latency = latency == 0 ? millis : latency * (1 - ALPHA) + millis * ALPHA;
+		baseline = baseline == 0 || latency < baseline ? latency : baseline * (1 - BASELINE_ALPHA) + latency * BASELINE_ALPHA;
+
+		final long now = System.nanoTime();
+		if (now - adjusted < ADJUSTMENT_DELAY) {
+			// Let the previous adjustment take effect
+			return;
+		}
+		if (latency > baseline * BACKOFF_THRESHOLD) {
+			// The backend slows down, back off
+			refill(now);
+			rate = Math.max(MIN_RATE, rate / 2);
+			adjusted = now;
+		} else if (latency < baseline * RECOVERY_THRESHOLD && rate < maxRate) {
+			// The backend is healthy again, slowly increase
+			refill(now);
+			rate = Math.min(maxRate, rate * 1.1);
+			adjusted = now;
+		}
+	}
+}
@@ -1,16 +1,26 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 import javax.validation.ValidationException;
 
 import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.api.Normalizer;
 import org.ligoj.app.iam.UserOrg;
 import org.ligoj.app.iam.dao.DelegateOrgRepository;
 import org.ligoj.app.plugin.id.resource.UserOrgEditionVo;
 import org.ligoj.app.plugin.id.resource.UserOrgResource;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
@@ -22,7 +32,7 @@ import org.springframework.stereotype.Component;
  */
 @Component
 @Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
-public class UserAtomicLdapTask extends AbstractLdapBatchTask<UserUpdateEntry> {
+public class UserAtomicLdapTask extends AbstractLdapBatchTask<UserUpdateEntry> implements BatchCoalescer<UserUpdateEntry> {
 
 	@Autowired
 	protected UserOrgResource resource;
@@ -64,9 +74,128 @@ public class UserAtomicLdapTask extends AbstractLdapBatchTask<UserUpdateEntry> {
 		FUNCTIONS.put("delete", (u, e) -> u.resource.delete(e.getUser()));
 	}
 
+	/**
+	 * Snapshot of the users to update, loaded at once. Key is the normalized login. A user is evicted as soon as it is
+	 * written, the next operations on this user read its current state.
+	 */
+	private final Map<String, UserOrg> users = new ConcurrentHashMap<>();
+
+	/**
+	 * State of the users after the attribute changes planned by a dry-run. Key is the normalized login.
+	 */
+	private final Map<String, UserOrgEditionVo> planned = new ConcurrentHashMap<>();
+
+	/**
+	 * The users planned to be deleted by a dry-run, by normalized login.
+	 */
+	private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The users of the attribute operations are loaded at once, with the visible groups computed only once.
+	 */
+	@Override
+	protected void prefetch(final List<UserUpdateEntry> entries) {
+		users.putAll(resource.findAllById(entries.stream().filter(e -> UPDATE_ACTION_TYPES.get(e.getOperation()) == UserBatchUpdateType.ATTRIBUTE)
+				.map(this::getPartition).distinct().collect(Collectors.toList())));
+	}
+
+	/**
+	 * The latency is classified by operation type, such as "attribute" or "delete".
+	 */
+	@Override
+	protected String getOperation(final UserUpdateEntry entry) {
+		return Optional.ofNullable(UPDATE_ACTION_TYPES.get(entry.getOperation())).map(t -> t.name().toLowerCase(Locale.ENGLISH))
+				.orElse("unsupported");
+	}
+
+	/**
+	 * The operations on a user are proceeded in order.
+	 */
+	@Override
+	protected String getPartition(final UserUpdateEntry entry) {
+		return Normalizer.normalize(StringUtils.trimToEmpty(entry.getUser()));
+	}
+
 	@Override
 	protected void doBatch(final UserUpdateEntry entry) throws Exception {
+		// Update the user
+		if (checkOperation(entry) == UserBatchUpdateType.ATTRIBUTE) {
+			// Execute atomic operation
+			prepare(entry);
+			try {
+				FUNCTIONS.get(entry.getOperation()).accept(this, entry);
+				resource.update(entry.getUserLdap());
+			} finally {
+				users.remove(getPartition(entry));
+			}
+		} else {
+			// Other self managed operation
+			users.remove(getPartition(entry));
+			FUNCTIONS.get(entry.getOperation()).accept(this, entry);
+		}
+	}
+
+	/**
+	 * The consecutive attribute operations on the same user are coalesced.
+	 */
+	@Override
+	public boolean isCoalesced(final UserUpdateEntry previous, final UserUpdateEntry entry) {
+		return UPDATE_ACTION_TYPES.get(previous.getOperation()) == UserBatchUpdateType.ATTRIBUTE
+				&& UPDATE_ACTION_TYPES.get(entry.getOperation()) == UserBatchUpdateType.ATTRIBUTE && getPartition(previous).equals(getPartition(entry));
+	}
+
+	/**
+	 * Apply all attribute changes to the user, then update it once.
+	 */
+	@Override
+	public void doBatch(final List<UserUpdateEntry> entries) throws Exception {
+		final UserUpdateEntry first = entries.get(0);
+		prepare(first);
+		try {
+			for (final UserUpdateEntry entry : entries) {
+				entry.setUserLdap(first.getUserLdap());
+				FUNCTIONS.get(entry.getOperation()).accept(this, entry);
+			}
+			resource.update(first.getUserLdap());
+		} finally {
+			users.remove(getPartition(first));
+		}
+	}
 
+	/**
+	 * The changes planned before on the same user are considered as done : the attribute changes are cumulated, and a
+	 * deleted user cannot be changed anymore. The other operations do not change the planned state of the user.
+	 */
+	@Override
+	protected String plan(final UserUpdateEntry entry) throws Exception {
+		final String user = getPartition(entry);
+		if (deleted.contains(user)) {
+			throw new ValidationJsonException(UserOrgResource.USER_KEY, BusinessException.KEY_UNKNOW_ID, "0", "user", "1", entry.getUser());
+		}
+		if (checkOperation(entry) == UserBatchUpdateType.ATTRIBUTE) {
+			final UserOrgEditionVo previous = planned.get(user);
+			if (previous == null) {
+				prepare(entry);
+			} else {
+				entry.setUserLdap(copy(previous));
+			}
+			FUNCTIONS.get(entry.getOperation()).accept(this, entry);
+			resource.checkUpdate(entry.getUserLdap());
+			planned.put(user, entry.getUserLdap());
+			return "update";
+		}
+		resource.checkDeletion(entry.getUser(), entry.getOperation());
+		if (UPDATE_ACTION_TYPES.get(entry.getOperation()) == UserBatchUpdateType.DELETE) {
+			planned.remove(user);
+			deleted.add(user);
+		}
+		return entry.getOperation();
+	}
+
+	/**
+	 * Check the operation of the given entry is supported.
+	 */
+	private UserBatchUpdateType checkOperation(final UserUpdateEntry entry) {
 		final UserBatchUpdateType type = UPDATE_ACTION_TYPES.get(entry.getOperation());
 		if (type == null) {
 			// Non supported operation
@@ -78,34 +207,47 @@ public class UserAtomicLdapTask extends AbstractLdapBatchTask<UserUpdateEntry> {
 			// Non supported operation
 			throw new ValidationException("null-value-expected");
 		}
+		return type;
+	}
 
-		// Update the user
-		if (type == UserBatchUpdateType.ATTRIBUTE) {
-			// Fetch the user
-			final UserOrg user = resource.findById(entry.getUser());
-
-			// Prepare the local entity
-			final UserOrgEditionVo editUser = new UserOrgEditionVo();
-			editUser.setId(user.getId());
-			editUser.setFirstName(user.getFirstName());
-			editUser.setLastName(user.getLastName());
-			editUser.setCompany(user.getCompany());
-			editUser.setLastName(user.getLastName());
-			editUser.setMail(user.getMails().stream().findFirst().orElse(null));
-			editUser.setDepartment(user.getDepartment());
-			editUser.setLocalId(user.getLocalId());
-			editUser.setGroups(user.getGroups());
-
-			// Save the initial state user
-			entry.setUserLdap(editUser);
+	/**
+	 * Fetch the user and save its initial state in the given entry. The prefetched user is used when available.
+	 */
+	private void prepare(final UserUpdateEntry entry) throws Exception {
+		// Fetch the user
+		final UserOrg prefetched = users.get(getPartition(entry));
+		final UserOrg user = prefetched == null ? read(() -> resource.findById(entry.getUser())) : prefetched;
+
+		// Prepare the local entity
+		final UserOrgEditionVo editUser = new UserOrgEditionVo();
+		editUser.setId(user.getId());
+		editUser.setFirstName(user.getFirstName());
+		editUser.setLastName(user.getLastName());
+		editUser.setCompany(user.getCompany());
+		editUser.setLastName(user.getLastName());
+		editUser.setMail(user.getMails().stream().findFirst().orElse(null));
+		editUser.setDepartment(user.getDepartment());
+		editUser.setLocalId(user.getLocalId());
+		editUser.setGroups(new ArrayList<>(user.getGroups()));
+
+		// Save the initial state user
+		entry.setUserLdap(editUser);
+	}
 
-			// Execute atomic operation
-			FUNCTIONS.get(entry.getOperation()).accept(this, entry);
-			resource.update(entry.getUserLdap());
-		} else {
-			// Other self managed operation
-			FUNCTIONS.get(entry.getOperation()).accept(this, entry);
-		}
+	/**
+	 * Return a copy of the given user state, so a rejected change does not alter it.
+	 */
+	private UserOrgEditionVo copy(final UserOrgEditionVo user) {
+		final UserOrgEditionVo editUser = new UserOrgEditionVo();
+		editUser.setId(user.getId());
+		editUser.setFirstName(user.getFirstName());
+		editUser.setLastName(user.getLastName());
+		editUser.setCompany(user.getCompany());
+		editUser.setMail(user.getMail());
+		editUser.setDepartment(user.getDepartment());
+		editUser.setLocalId(user.getLocalId());
+		editUser.setGroups(new ArrayList<>(user.getGroups()));
+		return editUser;
 	}
 
 }
\ No newline at end of file
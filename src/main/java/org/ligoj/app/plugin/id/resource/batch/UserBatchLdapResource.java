@@ -3,6 +3,7 @@ package org.ligoj.app.plugin.id.resource.batch;
 import java.io.IOException;
 import java.io.InputStream;
 
+import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -36,11 +37,13 @@ public class UserBatchLdapResource extends AbstractBatchResource {
 	 * Upload a file of LDAP entries to create or update users. The whole entry is replaced.
 	 * 
 	 * @param uploadedFile
-	 *            LDAP entries files to import. Currently support only CSV format.
+	 *            LDAP entries files to import, in CSV, JSON or NDJSON format, optionally gzip or zip compressed.
 	 * @param columns
 	 *            the CSV header names.
 	 * @param encoding
 	 *            CSV encoding. Default is UTF-8.
+	 * @param options
+	 *            the submission options.
 	 * @return the import identifier.
 	 */
 	@POST
@@ -48,19 +51,22 @@ public class UserBatchLdapResource extends AbstractBatchResource {
 	@Path("full")
 	public long full(@Multipart(value = "csv-file") final InputStream uploadedFile,
 			@Multipart(value = "columns", required = false) final String[] columns,
-			@Multipart(value = "encoding", required = false) final String encoding) throws IOException {
-		return batch(uploadedFile, columns, encoding, DEFAULT_IMPORT_CSV_HEADERS, UserImportEntry.class, UserFullLdapTask.class);
+			@Multipart(value = "encoding", required = false) final String encoding, @BeanParam final BatchOptions options)
+			throws IOException {
+		return batch(uploadedFile, columns, encoding, DEFAULT_IMPORT_CSV_HEADERS, UserImportEntry.class, UserFullLdapTask.class, options);
 	}
 
 	/**
 	 * Upload a file of LDAP entries to execute atomic operations on existing users.
 	 * 
 	 * @param uploadedFile
-	 *            LDAP entries files to import. Currently support only CSV format.
+	 *            LDAP entries files to import, in CSV, JSON or NDJSON format, optionally gzip or zip compressed.
 	 * @param columns
 	 *            the CSV header names.
 	 * @param encoding
 	 *            CSV encoding. Default is UTF-8.
+	 * @param options
+	 *            the submission options.
 	 * @return the import identifier.
 	 */
 	@POST
@@ -68,7 +74,8 @@ public class UserBatchLdapResource extends AbstractBatchResource {
 	@Path("atomic")
 	public long atomic(@Multipart(value = "csv-file") final InputStream uploadedFile,
 			@Multipart(value = "columns", required = false) final String[] columns,
-			@Multipart(value = "encoding", required = false) final String encoding) throws IOException {
-		return batch(uploadedFile, columns, encoding, DEFAULT_UPDATE_CSV_HEADERS, UserUpdateEntry.class, UserAtomicLdapTask.class);
+			@Multipart(value = "encoding", required = false) final String encoding, @BeanParam final BatchOptions options)
+			throws IOException {
+		return batch(uploadedFile, columns, encoding, DEFAULT_UPDATE_CSV_HEADERS, UserUpdateEntry.class, UserAtomicLdapTask.class, options);
 	}
 }
@@ -1,7 +1,13 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.api.Normalizer;
 import org.ligoj.app.plugin.id.resource.UserOrgEditionVo;
 import org.ligoj.app.plugin.id.resource.UserOrgResource;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
@@ -18,10 +24,45 @@ public class UserFullLdapTask extends AbstractLdapBatchTask<UserImportEntry> {
 	@Autowired
 	protected UserOrgResource resource;
 
+	/**
+	 * The users planned to be created by a dry-run, by normalized identifier.
+	 */
+	private final Set<String> planned = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The users of a company are proceeded in order.
+	 */
+	@Override
+	protected String getPartition(final UserImportEntry entry) {
+		return Normalizer.normalize(StringUtils.trimToEmpty(entry.getCompany()));
+	}
+
+	@Override
+	protected String getOperation(final UserImportEntry entry) {
+		return "create";
+	}
+
 	@Override
 	protected void doBatch(final UserImportEntry entry) throws Exception {
+		// Create the user
+		resource.create(toEdition(entry));
+	}
+
+	@Override
+	protected String plan(final UserImportEntry entry) {
+		resource.checkCreate(toEdition(entry));
 
-		// Copy the user information
+		// The users planned before are considered as created
+		if (!planned.add(Normalizer.normalize(entry.getId()))) {
+			throw new ValidationJsonException(UserOrgResource.USER_KEY, "already-exist", "0", UserOrgResource.USER_KEY, "1", entry.getId());
+		}
+		return "create";
+	}
+
+	/**
+	 * Copy the user information of the given entry.
+	 */
+	private UserOrgEditionVo toEdition(final UserImportEntry entry) {
 		final UserOrgEditionVo user = new UserOrgEditionVo();
 		user.setCompany(entry.getCompany());
 		user.setFirstName(entry.getFirstName());
@@ -31,9 +72,7 @@ public class UserFullLdapTask extends AbstractLdapBatchTask<UserImportEntry> {
 
 		// Copy groups
 		user.setGroups(toList(entry.getGroups()));
-
-		// Create the user
-		resource.create(user);
+		return user;
 	}
 
 }
\ No newline at end of file
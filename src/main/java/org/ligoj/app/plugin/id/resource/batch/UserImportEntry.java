@@ -1,5 +1,7 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
+import java.util.List;
+
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
@@ -30,9 +32,10 @@ public class UserImportEntry extends SimpleUser implements BatchElement {
 	private String mail;
 
 	/**
-	 * Import status. <code>null</code> when not proceeded.
+	 * Import status. <code>null</code> when not proceeded. Set after the status text, so a proceeded entry is complete
+	 * for the other threads.
 	 */
-	private Boolean status;
+	private volatile Boolean status;
 
 	/**
 	 * Import status text. <code>null</code> when not proceeded.
@@ -40,8 +43,13 @@ public class UserImportEntry extends SimpleUser implements BatchElement {
 	private String statusText;
 
 	/**
-	 * Groups aliases.
+	 * Identifier of the failure in the errors of the task. <code>null</code> when not failed.
+	 */
+	private Integer error;
+
+	/**
+	 * Groups aliases, multi-valued. Comma separated in the CSV files.
 	 */
-	private String groups;
+	private List<String> groups;
 
 }
@@ -36,15 +36,21 @@ public class UserUpdateEntry implements BatchElement {
 	private String value;
 
 	/**
-	 * Import status. <code>null</code> when not proceeded.
+	 * Import status. <code>null</code> when not proceeded. Set after the status text, so a proceeded entry is complete
+	 * for the other threads.
 	 */
-	private Boolean status;
+	private volatile Boolean status;
 
 	/**
 	 * Import status text. <code>null</code> when not proceeded.
 	 */
 	private String statusText;
 
+	/**
+	 * Identifier of the failure in the errors of the task. <code>null</code> when not failed.
+	 */
+	private Integer error;
+
 	/**
 	 * The related resolved user
 	 */
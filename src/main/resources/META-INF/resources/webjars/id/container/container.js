@@ -261,7 +261,7 @@ define(function () {
 				// Delete without confirmation
 				$.ajax({
 					type: 'POST',
-					url: REST_PATH + 'service/id/' + current.containerType + '/empty/' + id,
+					url: REST_PATH + 'service/id/' + current.containerType + '/batch/empty/' + id,
 					success: function () {
 						notifyManager.notify(Handlebars.compile(current.$messages.updated)(id));
 						current.table && current.table.api().ajax.reload();
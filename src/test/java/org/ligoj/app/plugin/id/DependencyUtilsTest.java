@@ -0,0 +1,58 @@
+package org.ligoj.app.plugin.id;
+
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class of {@link DependencyUtils}
+ */
+public class DependencyUtilsTest {
+
+	@Test
+	public void toLevelsEmpty() throws Exception {
+		// For coverage only
+		final Constructor<?> constructor = DependencyUtils.class.getDeclaredConstructor();
+		constructor.setAccessible(true);
+		constructor.newInstance();
+
+		Assert.assertTrue(toLevels().isEmpty());
+	}
+
+	@Test
+	public void toLevels() {
+		// Children are listed before their parents, "x" is an external parent
+		final List<List<String[]>> levels = toLevels(new String[] { "c", "b" }, new String[] { "b", "a" }, new String[] { "a", null },
+				new String[] { "d", "x" }, new String[] { "e", "a" });
+		Assert.assertEquals(3, levels.size());
+		Assert.assertEquals(Arrays.asList("a", "d"), toIds(levels.get(0)));
+		Assert.assertEquals(Arrays.asList("b", "e"), toIds(levels.get(1)));
+		Assert.assertEquals(Collections.singletonList("c"), toIds(levels.get(2)));
+	}
+
+	@Test
+	public void toLevelsCycle() {
+		// "a" and "b" are in a cycle, "c" depends on this cycle, "d" is independent
+		final List<List<String[]>> levels = toLevels(new String[] { "a", "b" }, new String[] { "b", "a" }, new String[] { "c", "a" },
+				new String[] { "d", null });
+		Assert.assertEquals(1, levels.size());
+		Assert.assertEquals(Collections.singletonList("d"), toIds(levels.get(0)));
+	}
+
+	@Test
+	public void toLevelsSelfParent() {
+		Assert.assertTrue(toLevels(new String[] { "a", "a" }).isEmpty());
+	}
+
+	private List<List<String[]>> toLevels(final String[]... items) {
+		return DependencyUtils.toLevels(Arrays.asList(items), i -> i[0], i -> i[1]);
+	}
+
+	private List<String> toIds(final List<String[]> items) {
+		return Arrays.asList(items.stream().map(i -> i[0]).toArray(String[]::new));
+	}
+}
@@ -199,6 +199,34 @@ public class CompanyResourceTest extends AbstractContainerResourceTest {
 		resource.delete("france");
 	}
 
+	@Test
+	public void toTreeOccupancy() {
+		final Map<String, CompanyOrg> companies = new HashMap<>();
+		companies.put("france", new CompanyOrg("ou=france,ou=people,dc=sample,dc=com", "france"));
+		companies.put("gfi", new CompanyOrg("ou=gfi,ou=france,ou=people,dc=sample,dc=com", "gfi"));
+		companies.put("ing", new CompanyOrg("ou=ing,ou=external,ou=people,dc=sample,dc=com", "ing"));
+
+		final Map<String, UserOrg> users = new HashMap<>();
+		final UserOrg user1 = new UserOrg();
+		user1.setCompany("gfi");
+		users.put("user1", user1);
+		final UserOrg user2 = new UserOrg();
+		user2.setCompany("gfi");
+		users.put("user2", user2);
+		final UserOrg user3 = new UserOrg();
+		user3.setCompany("france");
+		users.put("user3", user3);
+		final UserOrg user4 = new UserOrg();
+		user4.setCompany("unknown");
+		users.put("user4", user4);
+
+		final Map<String, Long> occupancy = resource.toTreeOccupancy(companies, resource.toOccupancy(users));
+		Assert.assertEquals(2, occupancy.get("ou=gfi,ou=france,ou=people,dc=sample,dc=com").intValue());
+		Assert.assertEquals(3, occupancy.get("ou=france,ou=people,dc=sample,dc=com").intValue());
+		Assert.assertEquals(3, occupancy.get("dc=com").intValue());
+		Assert.assertFalse(occupancy.containsKey("ou=ing,ou=external,ou=people,dc=sample,dc=com"));
+	}
+
 	@Test
 	public void createAlreadyExists() {
 		thrown.expect(ValidationJsonException.class);
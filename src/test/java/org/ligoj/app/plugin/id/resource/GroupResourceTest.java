@@ -23,6 +23,7 @@ import org.ligoj.app.model.ContainerType;
 import org.ligoj.app.plugin.id.model.ContainerScope;
 import org.ligoj.bootstrap.core.json.TableItem;
 import org.ligoj.bootstrap.core.json.datatable.DataTableAttributes;
+import org.ligoj.bootstrap.core.resource.BusinessException;
 import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
@@ -172,12 +173,29 @@ public class GroupResourceTest extends AbstractContainerResourceTest {
 		final UserOrg user2 = new UserOrg();
 		user2.setCompany("internal");
 		user2.setDn("uid=fdaugan");
-		Mockito.when(userRepository.findByIdExpected("wuser")).thenReturn(user);
-		Mockito.when(userRepository.findByIdExpected("fdaugan")).thenReturn(user2);
+		final Map<String, UserOrg> users = new HashMap<>();
+		users.put("wuser", user);
+		users.put("fdaugan", user2);
+		Mockito.when(userRepository.findAll()).thenReturn(users);
 		Mockito.when(groupRepository.findByIdExpected(DEFAULT_USER, "dig"))
 				.thenReturn(new GroupOrg("cn=DIG,ou=fonction,ou=groups,dc=sample,dc=com", "DIG", null));
 
 		createInternal(group, "cn=new-group,cn=DIG,ou=fonction,ou=groups,dc=sample,dc=com");
+		Mockito.verify(groupRepository).addAttributes("cn=new-group,cn=DIG,ou=fonction,ou=groups,dc=sample,dc=com", "seeAlso",
+				Collections.singletonList("uid=wuser"));
+		Mockito.verify(groupRepository).addAttributes("cn=new-group,cn=DIG,ou=fonction,ou=groups,dc=sample,dc=com", "owner",
+				Collections.singletonList("uid=fdaugan"));
+		Mockito.verify(groupRepository).addAttributes("cn=new-group,cn=DIG,ou=fonction,ou=groups,dc=sample,dc=com", "businessCategory",
+				Collections.singletonList("SOME"));
+	}
+
+	@Test
+	public void createUnknownOwner() {
+		thrown.expect(ValidationJsonException.class);
+		thrown.expect(MatcherUtil.validationMatcher("id", "unknown-id"));
+		final GroupEditionVo group = new GroupEditionVo();
+		group.setOwners(Collections.singletonList("any"));
+		createInternal(group, "cn=new-group,ou=fonction,ou=groups,dc=sample,dc=com");
 	}
 
 	@Test
@@ -194,6 +212,108 @@ public class GroupResourceTest extends AbstractContainerResourceTest {
 		Assert.assertEquals("new-group", resource.create(group));
 	}
 
+	@Test
+	public void createBulk() {
+		final ContainerScope scope = containerScopeRepository.findByName("Fonction");
+		final GroupEditionVo child = new GroupEditionVo();
+		child.setName("new-child");
+		child.setScope(scope.getId());
+		child.setParent("New-Group");
+		final GroupEditionVo group = new GroupEditionVo();
+		group.setName("new-group");
+		group.setScope(scope.getId());
+		final GroupOrg groupOrg1 = new GroupOrg("cn=new-group,ou=fonction,ou=groups,dc=sample,dc=com", "new-group", null);
+		final GroupOrg groupOrg2 = new GroupOrg("cn=new-child,cn=new-group,ou=fonction,ou=groups,dc=sample,dc=com", "new-child", null);
+		Mockito.when(groupRepository.create("cn=new-group,ou=fonction,ou=groups,dc=sample,dc=com", "new-group")).thenReturn(groupOrg1);
+		Mockito.when(groupRepository.create("cn=new-child,cn=new-group,ou=fonction,ou=groups,dc=sample,dc=com", "new-child"))
+				.thenReturn(groupOrg2);
+
+		// The child is declared before its parent
+		Assert.assertEquals(Arrays.asList("new-child", "new-group"), resource.createBulk(Arrays.asList(child, group)));
+		Mockito.verify(groupRepository).addGroup(groupOrg2, "new-group");
+
+		// The given containers are not changed
+		Assert.assertEquals("New-Group", child.getParent());
+	}
+
+	@Test
+	public void createBulkOwners() {
+		final ContainerScope scope = containerScopeRepository.findByName("Fonction");
+		final UserOrg user = new UserOrg();
+		user.setDn("uid=fdaugan");
+		Mockito.when(userRepository.findAll()).thenReturn(Collections.singletonMap("fdaugan", user));
+		final GroupEditionVo group1 = new GroupEditionVo();
+		group1.setName("new-group1");
+		group1.setScope(scope.getId());
+		group1.setOwners(Collections.singletonList("fdaugan"));
+		final GroupEditionVo group2 = new GroupEditionVo();
+		group2.setName("new-group2");
+		group2.setScope(scope.getId());
+		group2.setOwners(Collections.singletonList("fdaugan"));
+		Mockito.when(groupRepository.create(ArgumentMatchers.anyString(), ArgumentMatchers.anyString()))
+				.thenAnswer(i -> new GroupOrg(i.getArgument(0), i.getArgument(1), null));
+		Assert.assertEquals(Arrays.asList("new-group1", "new-group2"), resource.createBulk(Arrays.asList(group1, group2)));
+		Mockito.verify(groupRepository).addAttributes("cn=new-group2,ou=fonction,ou=groups,dc=sample,dc=com", "owner",
+				Collections.singletonList("uid=fdaugan"));
+
+		// The users are read once for all the groups
+		Mockito.verify(userRepository, Mockito.times(1)).findAll();
+	}
+
+	@Test
+	public void createBulkRollback() {
+		final ContainerScope scope = containerScopeRepository.findByName("Fonction");
+		final GroupEditionVo child = new GroupEditionVo();
+		child.setName("new-child");
+		child.setScope(scope.getId());
+		child.setParent("new-group");
+		final GroupEditionVo group = new GroupEditionVo();
+		group.setName("new-group");
+		group.setScope(scope.getId());
+		final GroupOrg groupOrg1 = new GroupOrg("cn=new-group,ou=fonction,ou=groups,dc=sample,dc=com", "new-group", null);
+		Mockito.when(groupRepository.create("cn=new-group,ou=fonction,ou=groups,dc=sample,dc=com", "new-group")).thenReturn(groupOrg1);
+		Mockito.when(groupRepository.create("cn=new-child,cn=new-group,ou=fonction,ou=groups,dc=sample,dc=com", "new-child"))
+				.thenThrow(new IllegalStateException("failed"));
+		try {
+			resource.createBulk(Arrays.asList(child, group));
+			Assert.fail("Expected a bulk failure");
+		} catch (final BusinessException e) {
+			// The failed container is reported
+			Assert.assertEquals("container-bulk-failed", e.getMessage());
+			Assert.assertEquals("new-child", e.getParameters()[0]);
+		}
+
+		// The parent created by this operation is deleted
+		Mockito.verify(groupRepository).delete(groupOrg1);
+	}
+
+	@Test
+	public void createBulkCycle() {
+		thrown.expect(ValidationJsonException.class);
+		thrown.expect(MatcherUtil.validationMatcher("parent", "container-parent-cycle"));
+		final GroupEditionVo group1 = new GroupEditionVo();
+		group1.setName("new-group1");
+		group1.setParent("new-group2");
+		final GroupEditionVo group2 = new GroupEditionVo();
+		group2.setName("new-group2");
+		group2.setParent("new-group1");
+		resource.createBulk(Arrays.asList(group1, group2));
+	}
+
+	@Test
+	public void createBulkAlreadyExists() {
+		thrown.expect(ValidationJsonException.class);
+		thrown.expect(MatcherUtil.validationMatcher("name", "already-exist"));
+		final ContainerScope scope = containerScopeRepository.findByName("Fonction");
+		final GroupEditionVo group1 = new GroupEditionVo();
+		group1.setName("new-group");
+		group1.setScope(scope.getId());
+		final GroupEditionVo group2 = new GroupEditionVo();
+		group2.setName("New-Group");
+		group2.setScope(scope.getId());
+		resource.createBulk(Arrays.asList(group1, group2));
+	}
+
 	@Test
 	public void deleteNoRight() {
 		thrown.expect(ValidationJsonException.class);
@@ -205,7 +325,7 @@ public class GroupResourceTest extends AbstractContainerResourceTest {
 	}
 
 	@Test
-	public void empty() {
+	public void findByIdForWrite() {
 		final GroupOrg groupOrg1 = new GroupOrg("cn=DIG,ou=fonction,ou=groups,dc=sample,dc=com", "DIG", Collections.emptySet());
 		final GroupOrg groupOrg2 = new GroupOrg("cn=DIG RHA,cn=DIG AS,cn=DIG,ou=fonction,ou=groups,dc=sample,dc=com", "DIG RHA",
 				Collections.emptySet());
@@ -216,7 +336,26 @@ public class GroupResourceTest extends AbstractContainerResourceTest {
 		Mockito.when(groupRepository.findAll()).thenReturn(groupsMap);
 		Mockito.when(groupRepository.findByIdExpected(DEFAULT_USER, "dig rha"))
 				.thenReturn(new GroupOrg("cn=DIG RHA,cn=DIG AS,cn=DIG,ou=fonction,ou=groups,dc=sample,dc=com", "dig rha", null));
-		resource.empty("dig rha");
+		Assert.assertEquals("dig rha", resource.findByIdForWrite("dig rha").getId());
+	}
+
+	@Test
+	public void removeUser() {
+		final UserOrg user = new UserOrg();
+		Mockito.when(userRepository.findByIdExpected("wuser")).thenReturn(user);
+		resource.removeUser("dig rha", "wuser");
+		Mockito.verify(groupRepository).removeUser(user, "dig rha");
+	}
+
+	@Test
+	public void removeUserOrg() {
+		final UserOrg user = new UserOrg();
+		Mockito.when(userRepository.findAll()).thenReturn(Collections.singletonMap("wuser", user));
+		resource.removeUser("dig rha", resource.findAllUsers().get("wuser"));
+
+		// The given user is removed without reading it again
+		Mockito.verify(groupRepository).removeUser(user, "dig rha");
+		Mockito.verify(userRepository, Mockito.never()).findByIdExpected(ArgumentMatchers.anyString());
 	}
 
 	@Test
@@ -251,9 +390,9 @@ public class GroupResourceTest extends AbstractContainerResourceTest {
 	}
 
 	@Test(expected = ValidationJsonException.class)
-	public void emptyNoRight() {
+	public void findByIdForWriteNoRight() {
 		initSpringSecurityContext("mmartin");
-		resource.empty("dig rha");
+		resource.findByIdForWrite("dig rha");
 	}
 
 	/**
@@ -0,0 +1,61 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class of {@link BatchChunk}
+ */
+public class BatchChunkTest {
+
+	private Path file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = Files.createTempFile("id-batch-", ".csv");
+	}
+
+	@After
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void splitEmpty() throws IOException {
+		Assert.assertTrue(BatchChunk.split(file, 2).isEmpty());
+	}
+
+	@Test
+	public void split() throws IOException {
+		Files.write(file, "a;1\n\nb;\"multi\nline\"\n  \nc;2\nd;3".getBytes(StandardCharsets.UTF_8));
+		final List<BatchChunk> chunks = BatchChunk.split(file, 2);
+		Assert.assertEquals(2, chunks.size());
+
+		// The blank lines are not records, a quoted value spans several lines
+		Assert.assertEquals(0, chunks.get(0).getOffset());
+		Assert.assertEquals(Arrays.asList(1, 3), chunks.get(0).getLines());
+		Assert.assertEquals("a;1\nb;\"multi\nline\"\n", chunks.get(0).read(file, StandardCharsets.UTF_8));
+
+		// The last record has no line feed
+		Assert.assertEquals(Arrays.asList(6, 7), chunks.get(1).getLines());
+		Assert.assertEquals("c;2\nd;3\n", chunks.get(1).read(file, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void splitQuotedBlankLine() throws IOException {
+		Files.write(file, "é;\"a\n\nb\"\nc;1\n".getBytes(StandardCharsets.UTF_8));
+		final List<BatchChunk> chunks = BatchChunk.split(file, 10);
+		Assert.assertEquals(1, chunks.size());
+		Assert.assertEquals(Arrays.asList(1, 4), chunks.get(0).getLines());
+		Assert.assertEquals("é;\"a\n\nb\"\nc;1\n", chunks.get(0).read(file, StandardCharsets.UTF_8));
+	}
+}
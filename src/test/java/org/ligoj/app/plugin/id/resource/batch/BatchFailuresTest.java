@@ -0,0 +1,54 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class of {@link BatchFailures}
+ */
+public class BatchFailuresTest {
+
+	@Test
+	public void add() {
+		final BatchFailures<UserImportEntry> failures = new BatchFailures<>();
+		final UserImportEntry entry = new UserImportEntry();
+		failures.add(entry);
+		Assert.assertEquals(1, failures.size());
+		Assert.assertSame(entry, failures.get(0));
+		Assert.assertEquals(1, failures.toArray().length);
+	}
+
+	@Test
+	public void iteratorSnapshot() {
+		final BatchFailures<UserImportEntry> failures = new BatchFailures<>();
+		failures.add(new UserImportEntry());
+		final Iterator<UserImportEntry> iterator = failures.iterator();
+
+		// The failures added while iterating are not seen, and do not break the iteration
+		failures.add(new UserImportEntry());
+		Assert.assertNotNull(iterator.next());
+		Assert.assertFalse(iterator.hasNext());
+		Assert.assertEquals(2, failures.size());
+	}
+
+	@Test
+	public void stream() {
+		final BatchFailures<UserImportEntry> failures = new BatchFailures<>();
+		failures.add(new UserImportEntry());
+		final List<UserImportEntry> filtered = failures.stream().filter(e -> {
+			failures.add(new UserImportEntry());
+			return true;
+		}).collect(Collectors.toList());
+		Assert.assertEquals(1, filtered.size());
+		Assert.assertEquals(2, failures.size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void snapshot() {
+		new BatchFailures<UserImportEntry>().snapshot().add(new UserImportEntry());
+	}
+}
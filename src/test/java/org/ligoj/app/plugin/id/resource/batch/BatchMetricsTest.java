@@ -0,0 +1,44 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class of {@link BatchMetrics}
+ */
+public class BatchMetricsTest {
+
+	@Test
+	public void throughputNotStarted() {
+		final BatchMetrics metrics = new BatchMetrics();
+		metrics.success();
+		Assert.assertEquals(0, metrics.getSince());
+		Assert.assertEquals(0, metrics.getThroughput(), 0);
+	}
+
+	@Test
+	public void throughput() {
+		final BatchMetrics metrics = new BatchMetrics();
+		metrics.start();
+		final long since = metrics.getSince();
+		metrics.success();
+		metrics.fail("invalid");
+
+		// Only the first start is considered
+		metrics.start();
+		Assert.assertEquals(since, metrics.getSince());
+		Assert.assertTrue(metrics.getThroughput() > 0);
+	}
+
+	@Test
+	public void failBounded() {
+		final BatchMetrics metrics = new BatchMetrics();
+		for (int i = 0; i < 150; i++) {
+			metrics.fail("key-" + i);
+		}
+		metrics.fail("key-0");
+		Assert.assertEquals(101, metrics.getFailures().size());
+		Assert.assertEquals(2, metrics.getFailures().get("key-0").longValue());
+		Assert.assertEquals(50, metrics.getFailures().get("other").longValue());
+	}
+}
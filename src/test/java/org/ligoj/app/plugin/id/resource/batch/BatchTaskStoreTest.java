@@ -0,0 +1,186 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.transaction.Transactional;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ligoj.app.AbstractAppTest;
+import org.ligoj.app.plugin.id.model.BatchTask;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * Test of {@link BatchTaskStore}
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+@Rollback
+@Transactional
+public class BatchTaskStoreTest extends AbstractAppTest {
+
+	private static final String RESOURCE = UserBatchLdapResource.class.getName();
+
+	@Autowired
+	private BatchTaskStore store;
+
+	@Test
+	public void checkpointAndResume() {
+		final BatchTaskVo<UserImportEntry> task = newTask();
+		store.create(task, UserFullLdapTask.class.getName());
+
+		// The first and the third entries are proceeded, the second one is running
+		task.getEntries().get(0).setStatus(Boolean.TRUE);
+		task.getEntries().get(2).setStatus(Boolean.FALSE);
+		task.getEntries().get(2).setStatusText("error");
+		task.getEntries().get(2).setError(0);
+		task.getErrors().add(new BatchError(0, "company-unknown-id", Collections.singletonMap("0", "any"), "error"));
+		task.getStatus().setDone(2);
+		task.getStatus().setFailures(1);
+		store.checkpoint(task);
+		Assert.assertEquals(1, task.getCheckpoint());
+		em.flush();
+		em.clear();
+
+		// Resume this task
+		final List<BatchTask> interrupted = store.findInterrupted(RESOURCE);
+		Assert.assertEquals(1, interrupted.size());
+		Assert.assertEquals(UserFullLdapTask.class.getName(), interrupted.get(0).getHandler());
+		final BatchTaskVo<BatchElement> resumed = store.load(interrupted.get(0));
+		Assert.assertTrue(resumed.isResumed());
+		Assert.assertFalse(resumed.isStored());
+		Assert.assertEquals(RESOURCE, resumed.getResource());
+		Assert.assertEquals(1, resumed.getCheckpoint());
+		Assert.assertEquals(2, resumed.getStatus().getDone());
+		Assert.assertEquals(1, resumed.getStatus().getFailures());
+		Assert.assertEquals(3, resumed.getEntries().size());
+		Assert.assertEquals("first", ((UserImportEntry) resumed.getEntries().get(0)).getId());
+		Assert.assertEquals(Boolean.TRUE, resumed.getEntries().get(0).getStatus());
+		Assert.assertNull(resumed.getEntries().get(1).getStatus());
+		Assert.assertEquals(Boolean.FALSE, resumed.getEntries().get(2).getStatus());
+		Assert.assertEquals("error", resumed.getEntries().get(2).getStatusText());
+		Assert.assertEquals(0, resumed.getEntries().get(2).getError().intValue());
+		Assert.assertEquals(1, resumed.getErrors().size());
+		Assert.assertEquals("company-unknown-id", resumed.getErrors().get(0).getKey());
+		Assert.assertEquals("any", resumed.getErrors().get(0).getParameters().get("0"));
+
+		// Complete this task
+		task.getEntries().get(1).setStatus(Boolean.TRUE);
+		task.getStatus().setDone(3);
+		task.getStatus().setEnd(new Date());
+		task.getStatus().setStatus(Boolean.TRUE);
+		store.save(task);
+		Assert.assertEquals(3, task.getCheckpoint());
+		Assert.assertTrue(store.findInterrupted(RESOURCE).isEmpty());
+		final BatchTaskVo<BatchElement> stored = store.findTask(task.getPrincipal(), task.getId());
+		Assert.assertEquals(3, stored.getStatus().getDone());
+		Assert.assertEquals("error", stored.getErrors().get(0).getText());
+		Assert.assertEquals(0, store.findEntries(task.getPrincipal(), task.getId(), Boolean.FALSE, PageRequest.of(0, 10)).getContent().get(0)
+				.getError().intValue());
+	}
+
+	@Test
+	public void checkpointAndResumeDryRun() {
+		final BatchTaskVo<UserImportEntry> task = newTask();
+		task.setDryRun(true);
+		task.setBucket(new TokenBucket(10, true));
+		store.create(task, UserFullLdapTask.class.getName());
+
+		// The first and the second entries are checked
+		task.getEntries().get(0).setStatusText("create");
+		task.getEntries().get(0).setStatus(Boolean.TRUE);
+		task.getEntries().get(1).setStatusText("error");
+		task.getEntries().get(1).setError(0);
+		task.getEntries().get(1).setStatus(Boolean.FALSE);
+		task.getErrors().add(new BatchError(0, "company-unknown-id", Collections.singletonMap("0", "any"), "error"));
+		task.getStatus().setDone(2);
+		task.getStatus().setFailures(1);
+		store.checkpoint(task);
+		em.flush();
+		em.clear();
+
+		// Resume this task with its options and its plan
+		final BatchTaskVo<BatchElement> resumed = store.load(store.findInterrupted(RESOURCE).get(0));
+		Assert.assertTrue(resumed.isDryRun());
+		Assert.assertEquals(10, resumed.getBucket().getMaxRate(), 0);
+		Assert.assertTrue(resumed.getBucket().isAdaptive());
+		Assert.assertEquals(2, resumed.getCheckpoint());
+		Assert.assertEquals(1, resumed.getStatus().getPlan().get("create").intValue());
+		Assert.assertEquals(1, resumed.getStatus().getPlan().get("error:company-unknown-id").intValue());
+		Assert.assertEquals(2, resumed.getStatus().getPlan().size());
+	}
+
+	@Test
+	public void resumeNotThrottled() {
+		store.create(newTask(), UserFullLdapTask.class.getName());
+		final BatchTaskVo<BatchElement> resumed = store.load(store.findInterrupted(RESOURCE).get(0));
+		Assert.assertFalse(resumed.isDryRun());
+		Assert.assertNull(resumed.getBucket());
+		Assert.assertTrue(resumed.getStatus().getPlan().isEmpty());
+	}
+
+	@Test
+	public void claim() {
+		final BatchTaskVo<UserImportEntry> task = newTask();
+		store.create(task, UserFullLdapTask.class.getName());
+
+		// Still confirmed by its owner
+		final BatchTask entity = store.findInterrupted(RESOURCE).get(0);
+		Assert.assertNotNull(entity.getOwner());
+		Assert.assertFalse(store.claim(entity));
+
+		// The owner has stopped for a while, the task is claimed once
+		entity.setHeartbeat(DateUtils.addHours(new Date(), -1));
+		em.flush();
+		Assert.assertTrue(store.claim(entity));
+		Assert.assertFalse(store.claim(entity));
+	}
+
+	@Test
+	public void saveLargeData() {
+		final BatchTaskVo<UserImportEntry> task = newTask();
+		task.getEntries().get(0).setFirstName(StringUtils.repeat('a', 5000));
+		task.setResource(null);
+		task.getStatus().setEnd(new Date());
+		store.save(task);
+		Assert.assertEquals(5000, ((UserImportEntry) store.findEntries(task.getPrincipal(), task.getId(), null, PageRequest.of(0, 10)).getContent()
+				.get(0)).getFirstName().length());
+	}
+
+	@Test
+	public void saveNotCheckpointed() {
+		final BatchTaskVo<UserImportEntry> task = newTask();
+		task.setResource(null);
+		task.getStatus().setEnd(new Date());
+		store.save(task);
+		Assert.assertTrue(store.findInterrupted(RESOURCE).isEmpty());
+		Assert.assertTrue(store.findTask(task.getPrincipal(), task.getId()).getErrors().isEmpty());
+	}
+
+	private BatchTaskVo<UserImportEntry> newTask() {
+		final BatchTaskVo<UserImportEntry> task = new BatchTaskVo<>();
+		task.setId(System.currentTimeMillis());
+		task.setPrincipal(DEFAULT_USER);
+		task.setResource(RESOURCE);
+		task.setEntries(Arrays.asList(newEntry("first"), newEntry("second"), newEntry("third")));
+		task.getStatus().setStart(new Date());
+		task.getStatus().setEntries(3);
+		return task;
+	}
+
+	private UserImportEntry newEntry(final String id) {
+		final UserImportEntry entry = new UserImportEntry();
+		entry.setId(id);
+		return entry;
+	}
+}
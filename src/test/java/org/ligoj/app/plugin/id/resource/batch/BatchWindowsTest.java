@@ -0,0 +1,64 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+
+/**
+ * Test class of {@link BatchWindows}
+ */
+public class BatchWindowsTest {
+
+	private BatchWindows windows;
+
+	@Before
+	public void setup() {
+		windows = new BatchWindows();
+		windows.windows = "night=22:00-06:00, day = 08:00-18:00";
+		windows.initialize();
+	}
+
+	@Test
+	public void getNextOpened() {
+		Assert.assertEquals(toMillis(2018, 23, 0), windows.getNext("night", toMillis(2018, 23, 0)));
+		Assert.assertEquals(toMillis(2018, 5, 59), windows.getNext("night", toMillis(2018, 5, 59)));
+		Assert.assertEquals(toMillis(2018, 8, 0), windows.getNext("day", toMillis(2018, 8, 0)));
+	}
+
+	@Test
+	public void getNextSameDay() {
+		Assert.assertEquals(toMillis(2018, 22, 0), windows.getNext("night", toMillis(2018, 12, 30)));
+		Assert.assertEquals(toMillis(2018, 8, 0), windows.getNext("day", toMillis(2018, 7, 0)));
+	}
+
+	@Test
+	public void getNextDay() {
+		Assert.assertEquals(LocalDateTime.of(2018, 3, 2, 8, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+				windows.getNext("day", toMillis(2018, 18, 0)));
+	}
+
+	@Test(expected = ValidationJsonException.class)
+	public void getNextUnknown() {
+		windows.getNext("any", System.currentTimeMillis());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void initializeInvalidTime() {
+		windows.windows = "night=22:00-25:00";
+		windows.initialize();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void initializeInvalidRange() {
+		windows.windows = "night";
+		windows.initialize();
+	}
+
+	private long toMillis(final int year, final int hour, final int minute) {
+		return LocalDateTime.of(year, 3, 1, hour, minute).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+}
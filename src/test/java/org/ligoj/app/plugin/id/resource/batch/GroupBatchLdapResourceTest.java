@@ -1,9 +1,17 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.transaction.Transactional;
 
@@ -15,6 +23,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 import org.ligoj.app.DefaultVerificationMode;
+import org.ligoj.app.api.Normalizer;
+import org.ligoj.app.iam.GroupOrg;
+import org.ligoj.app.iam.UserOrg;
 import org.ligoj.app.iam.model.DelegateOrg;
 import org.ligoj.app.model.ContainerType;
 import org.ligoj.app.plugin.id.model.ContainerScope;
@@ -22,8 +33,11 @@ import org.ligoj.app.plugin.id.resource.ContainerScopeResource;
 import org.ligoj.app.plugin.id.resource.GroupEditionVo;
 import org.ligoj.app.plugin.id.resource.GroupResource;
 import org.ligoj.bootstrap.core.SpringUtils;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.ligoj.bootstrap.resource.system.session.SessionSettings;
 import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.mockito.exceptions.base.MockitoException;
 import org.mockito.stubbing.Answer;
@@ -48,6 +62,18 @@ public class GroupBatchLdapResourceTest extends AbstractLdapBatchTest {
 
 	private GroupResource mockLdapResource;
 
+	@Autowired
+	private BatchTaskStore store;
+
+	@Autowired
+	private BatchThrottle throttle;
+
+	@Autowired
+	private BatchExecutor batchExecutor;
+
+	@Autowired
+	private BatchTelemetry telemetry;
+
 	@SuppressWarnings("unchecked")
 	@Before
 	public void mockApplicationContext() {
@@ -57,13 +83,27 @@ public class GroupBatchLdapResourceTest extends AbstractLdapBatchTest {
 		final GroupFullLdapTask mockTask = new GroupFullLdapTask();
 		mockTask.resource = mockLdapResource;
 		mockTask.securityHelper = securityHelper;
+		mockTask.store = store;
+		mockTask.throttle = throttle;
+		mockTask.batchExecutor = batchExecutor;
+		mockTask.telemetry = telemetry;
 		mockTask.containerScopeResource = Mockito.mock(ContainerScopeResource.class);
+		final GroupEmptyLdapTask mockTaskEmpty = new GroupEmptyLdapTask();
+		mockTaskEmpty.resource = mockLdapResource;
+		mockTaskEmpty.securityHelper = securityHelper;
+		mockTaskEmpty.store = store;
+		mockTaskEmpty.throttle = throttle;
+		mockTaskEmpty.batchExecutor = batchExecutor;
+		mockTaskEmpty.telemetry = telemetry;
 		Mockito.when(applicationContext.getBean(SessionSettings.class)).thenReturn(new SessionSettings());
 		Mockito.when(applicationContext.getBean((Class<?>) ArgumentMatchers.any(Class.class))).thenAnswer((Answer<Object>) invocation -> {
 			final Class<?> requiredType = (Class<Object>) invocation.getArguments()[0];
 			if (requiredType == GroupFullLdapTask.class) {
 				return mockTask;
 			}
+			if (requiredType == GroupEmptyLdapTask.class) {
+				return mockTaskEmpty;
+			}
 			return GroupBatchLdapResourceTest.super.applicationContext.getBean(requiredType);
 		});
 
@@ -125,9 +165,9 @@ public class GroupBatchLdapResourceTest extends AbstractLdapBatchTest {
 		Assert.assertEquals("Opérations Spéciales", importEntry.getName());
 		Assert.assertEquals("Fonction", importEntry.getType());
 		Assert.assertEquals("Operations", importEntry.getParent());
-		Assert.assertEquals("fdaugan,alongchu", importEntry.getOwner());
-		Assert.assertEquals("jdoe5,wuser", importEntry.getAssistant());
-		Assert.assertEquals("700301,700302", importEntry.getDepartment());
+		Assert.assertEquals(Arrays.asList("fdaugan", "alongchu"), importEntry.getOwner());
+		Assert.assertEquals(Arrays.asList("jdoe5", "wuser"), importEntry.getAssistant());
+		Assert.assertEquals(Arrays.asList("700301", "700302"), importEntry.getDepartment());
 		Assert.assertTrue(importEntry.getStatus());
 		Assert.assertNull(importEntry.getStatusText());
 
@@ -150,6 +190,212 @@ public class GroupBatchLdapResourceTest extends AbstractLdapBatchTest {
 		})).create(null);
 	}
 
+	@Test
+	public void fullJson() throws IOException, InterruptedException {
+		initSpringSecurityContext(DEFAULT_USER);
+		final long id = resource.full(new ByteArrayInputStream(
+				"[{\"name\":\"Opérations Spéciales\",\"type\":\"Fonction\",\"parent\":\"Operations\",\"owner\":[\"fdaugan\",\"alongchu\"],\"assistant\":\"jdoe5\",\"department\":[\"700301\",\"Sales, Paris\"]}]"
+						.getBytes(StandardCharsets.UTF_8)),
+				null, null, new BatchOptions());
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<GroupImportEntry> importTask = (BatchTaskVo<GroupImportEntry>) waitImport(resource.getImportTask(id));
+
+		// Check the result : the values are not split, a single value is accepted
+		final GroupImportEntry importEntry = checkImportTask(importTask);
+		Assert.assertEquals("Opérations Spéciales", importEntry.getName());
+		Assert.assertEquals(Arrays.asList("fdaugan", "alongchu"), importEntry.getOwner());
+		Assert.assertEquals(Arrays.asList("jdoe5"), importEntry.getAssistant());
+		Assert.assertEquals(Arrays.asList("700301", "Sales, Paris"), importEntry.getDepartment());
+		Assert.assertTrue(importEntry.getStatus());
+
+		// Check LDAP
+		Mockito.verify(mockLdapResource, new DefaultVerificationMode(data -> {
+			if (data.getAllInvocations().size() != 1) {
+				throw new MockitoException("Expect one call");
+			}
+			final GroupEditionVo group = (GroupEditionVo) data.getAllInvocations().get(0).getArguments()[0];
+			Assert.assertEquals(Arrays.asList("fdaugan", "alongchu"), group.getOwners());
+			Assert.assertEquals(Arrays.asList("jdoe5"), group.getAssistants());
+			Assert.assertEquals(Arrays.asList("700301", "Sales, Paris"), group.getDepartments());
+		})).create(null);
+	}
+
+	@Test
+	public void fullZip() throws IOException, InterruptedException {
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(compressed)) {
+			zip.putNextEntry(new ZipEntry("groups/"));
+			zip.putNextEntry(new ZipEntry("groups/groups.csv"));
+			zip.write("Gfi France;Fonction".getBytes("cp1252"));
+		}
+		initSpringSecurityContext(DEFAULT_USER);
+		final long id = resource.full(new ByteArrayInputStream(compressed.toByteArray()), new String[] { "name", "type" }, "cp1252",
+				new BatchOptions());
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<GroupImportEntry> importTask = (BatchTaskVo<GroupImportEntry>) waitImport(resource.getImportTask(id));
+
+		// Check the result : the first file is read
+		final GroupImportEntry importEntry = checkImportTask(importTask);
+		Assert.assertEquals("Gfi France", importEntry.getName());
+		Assert.assertEquals("Fonction", importEntry.getType());
+		Assert.assertTrue(importEntry.getStatus());
+	}
+
+	@Test
+	public void fullParallel() throws IOException, InterruptedException {
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setParallel(4);
+		final long id = resource.full(new ByteArrayInputStream(
+				"Root;Fonction\nParent;Fonction;Root\nOther;Fonction\nChild;Fonction;Parent\nGrandChild;Fonction;Child".getBytes("cp1252")),
+				new String[] { "name", "type", "parent" }, "cp1252", options);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<GroupImportEntry> importTask = (BatchTaskVo<GroupImportEntry>) waitImport(resource.getImportTask(id));
+		Assert.assertEquals(5, importTask.getStatus().getDone());
+		Assert.assertEquals(0, importTask.getStatus().getFailures());
+
+		// The groups sharing the same top-level ancestor are created in order by the same worker
+		final InOrder order = Mockito.inOrder(mockLdapResource);
+		order.verify(mockLdapResource).create(ArgumentMatchers.argThat(g -> "Root".equals(g.getName())));
+		order.verify(mockLdapResource).create(ArgumentMatchers.argThat(g -> "Parent".equals(g.getName())));
+		order.verify(mockLdapResource).create(ArgumentMatchers.argThat(g -> "Child".equals(g.getName())));
+		order.verify(mockLdapResource).create(ArgumentMatchers.argThat(g -> "GrandChild".equals(g.getName())));
+	}
+
+	@Test
+	public void fullStreamingParallel() throws IOException, InterruptedException {
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setParallel(4);
+		options.setStreaming(true);
+		final long id = resource.full(new ByteArrayInputStream(
+				"Root;Fonction\nParent;Fonction;Root\nOther;Fonction\nChild;Fonction;Parent\nGrandChild;Fonction;Child".getBytes("cp1252")),
+				new String[] { "name", "type", "parent" }, "cp1252", options);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<GroupImportEntry> importTask = (BatchTaskVo<GroupImportEntry>) waitImport(resource.getImportTask(id));
+		Assert.assertEquals(5, importTask.getStatus().getDone());
+		Assert.assertEquals(0, importTask.getStatus().getFailures());
+
+		// A child still follows its parent, whether the parent is pending or already proceeded
+		final InOrder order = Mockito.inOrder(mockLdapResource);
+		order.verify(mockLdapResource).create(ArgumentMatchers.argThat(g -> "Root".equals(g.getName())));
+		order.verify(mockLdapResource).create(ArgumentMatchers.argThat(g -> "Parent".equals(g.getName())));
+		order.verify(mockLdapResource).create(ArgumentMatchers.argThat(g -> "Child".equals(g.getName())));
+		order.verify(mockLdapResource).create(ArgumentMatchers.argThat(g -> "GrandChild".equals(g.getName())));
+	}
+
+	@Test
+	public void fullDryRunNested() throws IOException, InterruptedException {
+		initSpringSecurityContext(DEFAULT_USER);
+		Mockito.when(mockLdapResource.checkCreate(ArgumentMatchers.any(GroupEditionVo.class), ArgumentMatchers.anyMap())).thenAnswer(i -> {
+			// The parent must exist or be planned before
+			final GroupEditionVo group = i.getArgument(0);
+			final Map<String, String> newDns = i.getArgument(1);
+			final String parentDn = group.getParent() == null ? "ou=fonction,ou=groups,dc=sample,dc=com"
+					: newDns.get(Normalizer.normalize(group.getParent()));
+			if (parentDn == null) {
+				throw new ValidationJsonException("parent", BusinessException.KEY_UNKNOW_ID, "0", "group", "1", group.getParent());
+			}
+			return "cn=" + group.getName() + "," + parentDn;
+		});
+		final BatchOptions options = new BatchOptions();
+		options.setDryRun(true);
+		final long id = resource.full(
+				new ByteArrayInputStream("Parent;Fonction\nChild;Fonction;Parent\nParent;Fonction\nOrphan;Fonction;Unknown".getBytes("cp1252")),
+				new String[] { "name", "type", "parent" }, "cp1252", options);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<GroupImportEntry> importTask = (BatchTaskVo<GroupImportEntry>) waitImport(resource.getImportTask(id));
+
+		// The child of a planned parent is planned, a group is planned once
+		Assert.assertEquals(4, importTask.getStatus().getDone());
+		Assert.assertTrue(importTask.getEntries().get(0).getStatus());
+		Assert.assertTrue(importTask.getEntries().get(1).getStatus());
+		Assert.assertFalse(importTask.getEntries().get(2).getStatus());
+		Assert.assertFalse(importTask.getEntries().get(3).getStatus());
+		Assert.assertEquals(2, importTask.getStatus().getPlan().get("create").intValue());
+		Assert.assertEquals(1, importTask.getStatus().getPlan().get("error:name-already-exist").intValue());
+		Assert.assertEquals(1, importTask.getStatus().getPlan().get("error:parent-unknown-id").intValue());
+		Mockito.verify(mockLdapResource, Mockito.never()).create(ArgumentMatchers.any());
+	}
+
+	@Test
+	public void fullOrdered() throws IOException, InterruptedException {
+		initSpringSecurityContext(DEFAULT_USER);
+		Mockito.when(mockLdapResource.findById("existing")).thenReturn(new GroupOrg("cn=Existing,ou=fonction,ou=groups,dc=sample,dc=com", "Existing", new HashSet<>()));
+		final BatchOptions options = new BatchOptions();
+		options.setOrdered(true);
+		options.setParallel(2);
+		final long id = resource.full(new ByteArrayInputStream(
+				"Child;Fonction;Parent\nParent;Fonction;Existing\nCycleA;Fonction;CycleB\nCycleB;Fonction;CycleA\nOrphan;Fonction;Unknown\nOrphanChild;Fonction;Orphan"
+						.getBytes("cp1252")),
+				new String[] { "name", "type", "parent" }, "cp1252", options);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<GroupImportEntry> importTask = (BatchTaskVo<GroupImportEntry>) waitImport(resource.getImportTask(id));
+
+		// Check the result : the cycles and the unknown parents are rejected
+		Assert.assertEquals(6, importTask.getStatus().getDone());
+		Assert.assertEquals(4, importTask.getStatus().getFailures());
+		Assert.assertTrue(importTask.getEntries().get(0).getStatus());
+		Assert.assertTrue(importTask.getEntries().get(1).getStatus());
+		Assert.assertFalse(importTask.getEntries().get(2).getStatus());
+		Assert.assertFalse(importTask.getEntries().get(3).getStatus());
+		Assert.assertFalse(importTask.getEntries().get(4).getStatus());
+		Assert.assertFalse(importTask.getEntries().get(5).getStatus());
+
+		// The parent is created before its child
+		final InOrder order = Mockito.inOrder(mockLdapResource);
+		order.verify(mockLdapResource).create(ArgumentMatchers.argThat(g -> "Parent".equals(g.getName())));
+		order.verify(mockLdapResource).create(ArgumentMatchers.argThat(g -> "Child".equals(g.getName())));
+		Mockito.verify(mockLdapResource, Mockito.times(2)).create(ArgumentMatchers.any());
+	}
+
+	@Test
+	public void empty() throws InterruptedException {
+		final UserOrg user = new UserOrg();
+		Mockito.when(mockLdapResource.findAllUsers()).thenReturn(Collections.singletonMap("fdaugan", user));
+		final BatchTaskVo<GroupMemberEntry> importTask = empty(new HashSet<>(Arrays.asList("wuser", "fdaugan")));
+
+		// Check the result, members are sorted and removed one by one
+		Assert.assertEquals(2, importTask.getStatus().getDone());
+		Assert.assertEquals("fdaugan", importTask.getEntries().get(0).getUser());
+		Assert.assertEquals("dig", importTask.getEntries().get(0).getGroup());
+		Assert.assertTrue(importTask.getEntries().get(0).getStatus());
+		Assert.assertTrue(importTask.getEntries().get(1).getStatus());
+		Assert.assertEquals(resource.emptyRate, importTask.getBucket().getRate(), 0);
+
+		// The users are read once, the prefetched user is not read again
+		Mockito.verify(mockLdapResource).findAllUsers();
+		Mockito.verify(mockLdapResource).removeUser("dig", user);
+		Mockito.verify(mockLdapResource).removeUser("dig", "wuser");
+	}
+
+	@Test
+	public void emptyError() throws InterruptedException {
+		Mockito.doThrow(new BusinessException("message")).when(mockLdapResource).removeUser("dig", "wuser");
+		final BatchTaskVo<GroupMemberEntry> importTask = empty(new HashSet<>(Arrays.asList("wuser", "fdaugan")));
+
+		// Check the result, the failed member does not stop the other ones
+		Assert.assertEquals(2, importTask.getStatus().getDone());
+		Assert.assertTrue(importTask.getEntries().get(0).getStatus());
+		Assert.assertFalse(importTask.getEntries().get(1).getStatus());
+		Assert.assertEquals("message", importTask.getEntries().get(1).getStatusText());
+		Mockito.verify(mockLdapResource).removeUser("dig", "fdaugan");
+	}
+
+	@SuppressWarnings("unchecked")
+	private BatchTaskVo<GroupMemberEntry> empty(final Set<String> members) throws InterruptedException {
+		initSpringSecurityContext(DEFAULT_USER);
+		final GroupOrg group = new GroupOrg("cn=DIG,ou=fonction,ou=groups,dc=sample,dc=com", "DIG", members);
+		Mockito.when(mockLdapResource.findByIdForWrite("dig")).thenReturn(group);
+		final GroupResource groupResource = resource.resource;
+		resource.resource = mockLdapResource;
+		try {
+			return (BatchTaskVo<GroupMemberEntry>) waitImport(resource.getImportTask(resource.empty("dig")));
+		} finally {
+			resource.resource = groupResource;
+		}
+	}
+
 	protected <U extends BatchElement> BatchTaskVo<U> full(final InputStream input, final String[] headers) throws IOException, InterruptedException {
 		return full(input, headers, "cp1252");
 	}
@@ -157,7 +403,7 @@ public class GroupBatchLdapResourceTest extends AbstractLdapBatchTest {
 	protected <U extends BatchElement> BatchTaskVo<U> full(final InputStream input, final String[] headers, final String encoding)
 			throws IOException, InterruptedException {
 		initSpringSecurityContext(DEFAULT_USER);
-		final long id = resource.full(input, headers, encoding);
+		final long id = resource.full(input, headers, encoding, new BatchOptions());
 		Assert.assertNotNull(id);
 		@SuppressWarnings("unchecked")
 		final BatchTaskVo<U> importTask = (BatchTaskVo<U>) resource.getImportTask(id);
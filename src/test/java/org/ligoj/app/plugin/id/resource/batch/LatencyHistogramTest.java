@@ -0,0 +1,39 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class of {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void empty() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0, histogram.getMean(), 0);
+		Assert.assertEquals(0, histogram.getP99(), 0);
+		Assert.assertEquals(0, histogram.getBuckets().get("+Inf").longValue());
+	}
+
+	@Test
+	public void record() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 98; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(500));
+		}
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(150));
+		histogram.record(TimeUnit.SECONDS.toNanos(20));
+		Assert.assertEquals(100, histogram.getCount());
+		Assert.assertEquals(20000, histogram.getMax(), 0);
+		Assert.assertEquals(1, histogram.getP50(), 0);
+		Assert.assertEquals(1, histogram.getP95(), 0);
+		Assert.assertEquals(200, histogram.getP99(), 0);
+		Assert.assertEquals(98, histogram.getBuckets().get("1").longValue());
+		Assert.assertEquals(99, histogram.getBuckets().get("200").longValue());
+		Assert.assertEquals(100, histogram.getBuckets().get("+Inf").longValue());
+	}
+}
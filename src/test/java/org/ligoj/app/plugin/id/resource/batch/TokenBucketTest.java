@@ -0,0 +1,75 @@
+package org.ligoj.app.plugin.id.resource.batch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class of {@link TokenBucket}
+ */
+public class TokenBucketTest {
+
+	@Test
+	public void acquireBurst() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(50, false);
+		final long start = System.nanoTime();
+		for (int i = 0; i < 50; i++) {
+			bucket.acquire();
+		}
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+	}
+
+	@Test
+	public void acquireLimited() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(50, false);
+		final long start = System.nanoTime();
+		for (int i = 0; i < 60; i++) {
+			bucket.acquire();
+		}
+		// 10 writes over the burst at 50 writes per second
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+	}
+
+	@Test
+	public void recordNotAdaptive() {
+		final TokenBucket bucket = new TokenBucket(10, false);
+		bucket.record(TimeUnit.SECONDS.toNanos(10));
+		Assert.assertEquals(10, bucket.getRate(), 0);
+	}
+
+	@Test
+	public void recordAdaptive() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(0, true);
+		Assert.assertEquals(TokenBucket.DEFAULT_ADAPTIVE_RATE, bucket.getMaxRate(), 0);
+
+		// Establish the baseline, then slow down
+		bucket.record(TimeUnit.MILLISECONDS.toNanos(1));
+		Thread.sleep(1100);
+		for (int i = 0; i < 10; i++) {
+			bucket.record(TimeUnit.MILLISECONDS.toNanos(100));
+		}
+		Assert.assertEquals(TokenBucket.DEFAULT_ADAPTIVE_RATE / 2, bucket.getRate(), 0);
+	}
+
+	@Test
+	public void recordAdaptiveBaselineRises() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(0, true);
+
+		// A few fast writes, then a lasting higher latency
+		bucket.record(TimeUnit.MILLISECONDS.toNanos(1));
+		Thread.sleep(1100);
+		for (int i = 0; i < 10; i++) {
+			bucket.record(TimeUnit.MILLISECONDS.toNanos(100));
+		}
+		Assert.assertEquals(TokenBucket.DEFAULT_ADAPTIVE_RATE / 2, bucket.getRate(), 0);
+
+		// The baseline follows the new latency, the rate is restored
+		for (int i = 0; i < 500; i++) {
+			bucket.record(TimeUnit.MILLISECONDS.toNanos(100));
+		}
+		Thread.sleep(1100);
+		bucket.record(TimeUnit.MILLISECONDS.toNanos(100));
+		Assert.assertTrue(bucket.getRate() > TokenBucket.DEFAULT_ADAPTIVE_RATE / 2);
+	}
+}
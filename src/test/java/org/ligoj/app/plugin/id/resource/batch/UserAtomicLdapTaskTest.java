@@ -1,6 +1,8 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.function.Function;
 
 import javax.validation.ValidationException;
@@ -14,6 +16,8 @@ import org.ligoj.app.plugin.id.resource.UserOrgEditionVo;
 import org.ligoj.app.plugin.id.resource.UserOrgResource;
 import org.ligoj.bootstrap.AbstractSecurityTest;
 import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 import org.mockito.exceptions.base.MockitoException;
 
@@ -29,6 +33,9 @@ public class UserAtomicLdapTaskTest extends AbstractSecurityTest {
 		task = new UserAtomicLdapTask();
 		task.resource = Mockito.mock(UserOrgResource.class);
 		task.securityHelper = new SecurityHelper();
+		task.store = Mockito.mock(BatchTaskStore.class);
+		task.throttle = Mockito.mock(BatchThrottle.class);
+		task.telemetry = new BatchTelemetry();
 		initSpringSecurityContext(DEFAULT_USER);
 
 		final UserOrg user = new UserOrg();
@@ -165,6 +172,123 @@ public class UserAtomicLdapTaskTest extends AbstractSecurityTest {
 		Mockito.verify(task.resource).delete(DEFAULT_USER);
 	}
 
+	@Test
+	public void runCoalesced() {
+		final BatchTaskVo<UserUpdateEntry> importTask = new BatchTaskVo<>();
+		importTask.setEntries(Arrays.asList(newEntry("firstname", "first"), newEntry("lastname", "last"), newEntry("lock", null)));
+		task.configure(importTask);
+		task.run();
+		Assert.assertEquals(3, importTask.getStatus().getDone());
+		Assert.assertTrue(importTask.getEntries().stream().allMatch(UserUpdateEntry::getStatus));
+
+		// Only one fetch and one update for both attributes
+		Mockito.verify(task.resource).findById(DEFAULT_USER);
+		Mockito.verify(task.resource).update(ArgumentMatchers.argThat(u -> "first".equals(u.getFirstName()) && "last".equals(u.getLastName())));
+		Mockito.verify(task.resource).lock(DEFAULT_USER);
+	}
+
+	@Test
+	public void runCoalescedFailed() {
+		Mockito.doThrow(new ValidationException("invalid")).when(task.resource)
+				.update(ArgumentMatchers.argThat(u -> "last".equals(u.getLastName())));
+		final BatchTaskVo<UserUpdateEntry> importTask = new BatchTaskVo<>();
+		importTask.setEntries(Arrays.asList(newEntry("firstname", "first"), newEntry("lastname", "last")));
+		task.configure(importTask);
+		task.run();
+
+		// The entries are proceeded separately to isolate the failure
+		Assert.assertEquals(2, importTask.getStatus().getDone());
+		Assert.assertTrue(importTask.getEntries().get(0).getStatus());
+		Assert.assertFalse(importTask.getEntries().get(1).getStatus());
+		Assert.assertEquals(1, importTask.getStatus().getFailures());
+	}
+
+	@Test
+	public void runPrefetched() {
+		final UserOrg user = task.resource.findById(DEFAULT_USER);
+		Mockito.when(task.resource.findAllById(ArgumentMatchers.anyCollection())).thenReturn(Collections.singletonMap(DEFAULT_USER, user));
+		Mockito.clearInvocations(task.resource);
+		final BatchTaskVo<UserUpdateEntry> importTask = new BatchTaskVo<>();
+		importTask.setEntries(Arrays.asList(newEntry("firstname", "first"), newEntry("lock", null), newEntry("lastname", "last")));
+		task.configure(importTask);
+		task.run();
+		Assert.assertTrue(importTask.getEntries().stream().allMatch(UserUpdateEntry::getStatus));
+
+		// The first update reads the snapshot, the user is read again once written
+		Mockito.verify(task.resource).findAllById(Collections.singletonList(DEFAULT_USER));
+		Mockito.verify(task.resource).findById(DEFAULT_USER);
+		Mockito.verify(task.resource, Mockito.times(2)).update(ArgumentMatchers.any(UserOrgEditionVo.class));
+	}
+
+	private UserUpdateEntry newEntry(final String operation, final String value) {
+		final UserUpdateEntry entry = new UserUpdateEntry();
+		entry.setOperation(operation);
+		entry.setValue(value);
+		entry.setUser(DEFAULT_USER);
+		return entry;
+	}
+
+	@Test
+	public void planAttribute() throws Exception {
+		final UserUpdateEntry entry = new UserUpdateEntry();
+		entry.setOperation("mail");
+		entry.setValue("value");
+		entry.setUser(DEFAULT_USER);
+		Assert.assertEquals("update", task.plan(entry));
+
+		// Only checked
+		Mockito.verify(task.resource).checkUpdate(entry.getUserLdap());
+		Assert.assertEquals("value", entry.getUserLdap().getMail());
+		Mockito.verify(task.resource, Mockito.never()).update(ArgumentMatchers.any(UserOrgEditionVo.class));
+	}
+
+	@Test
+	public void planDelete() throws Exception {
+		final UserUpdateEntry entry = new UserUpdateEntry();
+		entry.setOperation("delete");
+		entry.setUser(DEFAULT_USER);
+		Assert.assertEquals("delete", task.plan(entry));
+
+		// Only checked
+		Mockito.verify(task.resource).checkDeletion(DEFAULT_USER, "delete");
+		Mockito.verify(task.resource, Mockito.never()).delete(DEFAULT_USER);
+	}
+
+	@Test
+	public void planAttributes() throws Exception {
+		final UserUpdateEntry mail = new UserUpdateEntry();
+		mail.setOperation("mail");
+		mail.setValue("value");
+		mail.setUser(DEFAULT_USER);
+		Assert.assertEquals("update", task.plan(mail));
+		final UserUpdateEntry department = new UserUpdateEntry();
+		department.setOperation("department");
+		department.setValue("value");
+		department.setUser(DEFAULT_USER);
+		Assert.assertEquals("update", task.plan(department));
+
+		// The second change is checked with the first one
+		Assert.assertEquals("value", department.getUserLdap().getMail());
+		Assert.assertEquals("value", department.getUserLdap().getDepartment());
+		Assert.assertEquals("untouched", mail.getUserLdap().getDepartment());
+		Mockito.verify(task.resource).findById(DEFAULT_USER);
+	}
+
+	@Test(expected = ValidationJsonException.class)
+	public void planDeleted() throws Exception {
+		final UserUpdateEntry delete = new UserUpdateEntry();
+		delete.setOperation("delete");
+		delete.setUser(DEFAULT_USER);
+		Assert.assertEquals("delete", task.plan(delete));
+
+		// The deleted user cannot be changed anymore
+		final UserUpdateEntry entry = new UserUpdateEntry();
+		entry.setOperation("mail");
+		entry.setValue("value");
+		entry.setUser(DEFAULT_USER);
+		task.plan(entry);
+	}
+
 	private void checkAttribute(final Function<UserOrgEditionVo, String> function, final String value) {
 
 		// Check LDAP
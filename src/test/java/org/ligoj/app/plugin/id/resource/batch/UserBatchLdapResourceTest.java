@@ -1,15 +1,23 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import javax.transaction.Transactional;
 import javax.validation.ConstraintViolationException;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
 
+import org.apache.commons.lang3.time.DateUtils;
+import org.apache.cxf.jaxrs.impl.MetadataMap;
 import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
 import org.junit.After;
 import org.junit.Assert;
@@ -24,7 +32,9 @@ import org.ligoj.app.iam.model.DelegateOrg;
 import org.ligoj.app.plugin.id.resource.UserOrgEditionVo;
 import org.ligoj.app.plugin.id.resource.UserOrgResource;
 import org.ligoj.bootstrap.core.SpringUtils;
+import org.ligoj.bootstrap.core.json.TableItem;
 import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.ligoj.bootstrap.resource.system.session.SessionSettings;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
@@ -51,6 +61,18 @@ public class UserBatchLdapResourceTest extends AbstractLdapBatchTest {
 
 	private UserOrgResource mockLdapResource;
 
+	@Autowired
+	private BatchTaskStore store;
+
+	@Autowired
+	private BatchThrottle throttle;
+
+	@Autowired
+	private BatchExecutor batchExecutor;
+
+	@Autowired
+	private BatchTelemetry telemetry;
+
 	@SuppressWarnings("unchecked")
 	@Before
 	public void mockApplicationContext() {
@@ -60,9 +82,17 @@ public class UserBatchLdapResourceTest extends AbstractLdapBatchTest {
 		final UserFullLdapTask mockTask = new UserFullLdapTask();
 		mockTask.resource = mockLdapResource;
 		mockTask.securityHelper = securityHelper;
+		mockTask.store = store;
+		mockTask.throttle = throttle;
+		mockTask.batchExecutor = batchExecutor;
+		mockTask.telemetry = telemetry;
 		final UserAtomicLdapTask mockTaskUpdate = new UserAtomicLdapTask();
 		mockTaskUpdate.resource = mockLdapResource;
 		mockTaskUpdate.securityHelper = securityHelper;
+		mockTaskUpdate.store = store;
+		mockTaskUpdate.throttle = throttle;
+		mockTaskUpdate.batchExecutor = batchExecutor;
+		mockTaskUpdate.telemetry = telemetry;
 		Mockito.when(applicationContext.getBean(SessionSettings.class)).thenReturn(new SessionSettings());
 		Mockito.when(applicationContext.getBean((Class<?>) ArgumentMatchers.any(Class.class))).thenAnswer((Answer<Object>) invocation -> {
 			final Class<?> requiredType = (Class<Object>) invocation.getArguments()[0];
@@ -98,7 +128,7 @@ public class UserBatchLdapResourceTest extends AbstractLdapBatchTest {
 		Assert.assertEquals("Sébastien", importEntry.getFirstName());
 		Assert.assertEquals("Loubli", importEntry.getLastName());
 		Assert.assertEquals("kloubli", importEntry.getId());
-		Assert.assertEquals("jira", importEntry.getGroups());
+		Assert.assertEquals(Arrays.asList("jira"), importEntry.getGroups());
 		Assert.assertEquals("my.address@sample.com", importEntry.getMail());
 		Assert.assertTrue(importEntry.getStatus());
 		Assert.assertNull(importEntry.getStatusText());
@@ -134,7 +164,7 @@ public class UserBatchLdapResourceTest extends AbstractLdapBatchTest {
 		Mockito.when(mockLdapResource.findById("fdaugan")).thenReturn(user);
 
 		final long id = resource.atomic(new ByteArrayInputStream("fdaugan;mail;any.daugan@sample.com".getBytes("cp1252")),
-				new String[] { "user", "operation", "value" }, "cp1252");
+				new String[] { "user", "operation", "value" }, "cp1252", new BatchOptions());
 		Assert.assertNotNull(id);
 		@SuppressWarnings("unchecked")
 		BatchTaskVo<UserUpdateEntry> importTask = (BatchTaskVo<UserUpdateEntry>) resource.getImportTask(id);
@@ -200,7 +230,70 @@ public class UserBatchLdapResourceTest extends AbstractLdapBatchTest {
 		thrown.expectMessage("Invalid header");
 		final InputStream input = new ByteArrayInputStream("Loubli;Sébastien;kloubli4;my.address@sample.com;gfi;jira".getBytes("cp1250"));
 		initSpringSecurityContext(DEFAULT_USER);
-		resource.full(input, new String[] { "lastName", "firstName", "id", "mail8", "company", "groups" }, "cp1250");
+		resource.full(input, new String[] { "lastName", "firstName", "id", "mail8", "company", "groups" }, "cp1250", new BatchOptions());
+	}
+
+	@Test
+	public void fullJson() throws IOException, InterruptedException {
+		final InputStream input = new ByteArrayInputStream(("{\"lastName\":\"Loubli\",\"firstName\":\"Sébastien\",\"id\":\"kloubli9\","
+				+ "\"mail\":\"my.address@sample.com\",\"company\":\"gfi\",\"groups\":[\"jira\",\" \",\"gfi\"]}\n"
+				+ "{\"lastName\":\"Loubli\",\"firstName\":\"Sébastien\",\"mail\":\"my.address@sample.com\",\"company\":\"gfi\"}")
+						.getBytes(StandardCharsets.UTF_8));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setStreaming(true);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<UserImportEntry> importTask = (BatchTaskVo<UserImportEntry>) waitImport(
+				resource.getImportTask(resource.full(input, null, null, options)));
+
+		// Only the invalid entry is kept
+		Assert.assertEquals(2, importTask.getStatus().getEntries());
+		Assert.assertEquals(1, importTask.getEntries().size());
+		Assert.assertEquals(Boolean.FALSE, importTask.getEntries().get(0).getStatus());
+
+		// Check LDAP
+		Mockito.verify(mockLdapResource, new DefaultVerificationMode(data -> {
+			if (data.getAllInvocations().size() != 1) {
+				throw new MockitoException("Expect one call");
+			}
+			final UserOrgEditionVo userLdap = (UserOrgEditionVo) data.getAllInvocations().get(0).getArguments()[0];
+			Assert.assertEquals("kloubli9", userLdap.getId());
+			Assert.assertEquals(Arrays.asList("jira", "gfi"), userLdap.getGroups());
+		})).create(null);
+	}
+
+	@Test
+	public void fullGzip() throws IOException, InterruptedException {
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write("Loubli;Sébastien;kloubli39;my.address@sample.com;gfi;jira".getBytes("cp1250"));
+		}
+		final BatchTaskVo<UserImportEntry> importTask = full(new ByteArrayInputStream(compressed.toByteArray()), new String[0], "cp1250");
+
+		// Check the result
+		final UserImportEntry importEntry = checkImportTask(importTask);
+		Assert.assertEquals("kloubli39", importEntry.getId());
+		Assert.assertEquals("Sébastien", importEntry.getFirstName());
+		Assert.assertTrue(importEntry.getStatus());
+	}
+
+	@Test
+	public void fullJsonStatusProperty() throws IOException {
+		thrown.expect(BusinessException.class);
+		thrown.expectMessage("Invalid header");
+		final InputStream input = new ByteArrayInputStream(
+				"[{\"lastName\":\"Loubli\",\"mail\":\"my.address@sample.com\",\"statusText\":\"done\"}]".getBytes(StandardCharsets.UTF_8));
+		initSpringSecurityContext(DEFAULT_USER);
+		resource.full(input, null, null, new BatchOptions());
+	}
+
+	@Test
+	public void fullJsonInvalidProperty() throws IOException {
+		thrown.expect(BusinessException.class);
+		thrown.expectMessage("Invalid header");
+		final InputStream input = new ByteArrayInputStream("  [{\"mail8\":\"my.address@sample.com\"}]".getBytes(StandardCharsets.UTF_8));
+		initSpringSecurityContext(DEFAULT_USER);
+		resource.full(input, null, null, new BatchOptions());
 	}
 
 	@Test
@@ -209,7 +302,7 @@ public class UserBatchLdapResourceTest extends AbstractLdapBatchTest {
 		initSpringSecurityContext(DEFAULT_USER);
 		@SuppressWarnings("unchecked")
 		final BatchTaskVo<UserImportEntry> importTask = (BatchTaskVo<UserImportEntry>) waitImport(
-				resource.getImportTask(resource.full(input, new String[0], "cp1250")));
+				resource.getImportTask(resource.full(input, new String[0], "cp1250", new BatchOptions())));
 		Assert.assertEquals(Boolean.TRUE, importTask.getEntries().get(0).getStatus());
 		Assert.assertNull(importTask.getEntries().get(0).getStatusText());
 
@@ -233,7 +326,44 @@ public class UserBatchLdapResourceTest extends AbstractLdapBatchTest {
 	public void fullMisingLogin() throws IOException {
 		final InputStream input = new ByteArrayInputStream("Loubli;Sébastien;;my.address@sample.com;gfi;jira".getBytes("cp1250"));
 		initSpringSecurityContext(DEFAULT_USER);
-		resource.full(input, new String[0], "cp1250");
+		resource.full(input, new String[0], "cp1250", new BatchOptions());
+	}
+
+	@Test
+	public void fullMisingLoginChunk() throws IOException {
+		final StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 6000; i++) {
+			csv.append("Loubli;Sébastien;kloubli").append(i).append(";my.address@sample.com;gfi;jira\n");
+		}
+		csv.append("Loubli;Sébastien;;my.address@sample.com;gfi;jira\n");
+		final InputStream input = new ByteArrayInputStream(csv.toString().getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		try {
+			resource.full(input, new String[0], "cp1250", new BatchOptions());
+			Assert.fail("Expected a validation failure");
+		} catch (final ConstraintViolationException e) {
+			Assert.assertTrue(e.getMessage().startsWith("Invalid entry at line 6001 :"));
+		}
+	}
+
+	@Test
+	public void fullMisingLoginAllLines() throws IOException {
+		final StringBuilder csv = new StringBuilder("Loubli;Sébastien;kloubli;my.address@sample.com;gfi;jira\n\n");
+		csv.append("Loubli;Sébastien;;my.address@sample.com;gfi;jira\n");
+		for (int i = 0; i < 6000; i++) {
+			csv.append("Loubli;Sébastien;kloubli").append(i).append(";my.address@sample.com;gfi;jira\n");
+		}
+		csv.append(" \nLoubli;Sébastien;;my.address@sample.com;gfi;jira\n");
+		final InputStream input = new ByteArrayInputStream(csv.toString().getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		try {
+			resource.full(input, new String[0], "cp1250", new BatchOptions());
+			Assert.fail("Expected a validation failure");
+		} catch (final ConstraintViolationException e) {
+			// Both invalid entries are reported, with their line despite the blank lines
+			Assert.assertTrue(e.getMessage().startsWith("Invalid entry at line 3 :"));
+			Assert.assertTrue(e.getMessage().contains("Invalid entry at line 6005 :"));
+		}
 	}
 
 	@Test
@@ -243,11 +373,404 @@ public class UserBatchLdapResourceTest extends AbstractLdapBatchTest {
 		initSpringSecurityContext(DEFAULT_USER);
 		@SuppressWarnings("unchecked")
 		final BatchTaskVo<UserImportEntry> importTask = (BatchTaskVo<UserImportEntry>) waitImport(
-				resource.getImportTask(resource.full(input, new String[0], "cp1250")));
+				resource.getImportTask(resource.full(input, new String[0], "cp1250", new BatchOptions())));
 		Assert.assertEquals("message", importTask.getEntries().get(0).getStatusText());
 		Assert.assertEquals(Boolean.FALSE, importTask.getEntries().get(0).getStatus());
 	}
 
+	@Test
+	public void fullStreaming() throws IOException, InterruptedException {
+		final InputStream input = new ByteArrayInputStream(
+				"Loubli;Sébastien;kloubli8;my.address@sample.com;gfi;jira\nLoubli;Sébastien;;my.address@sample.com;gfi;jira".getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setStreaming(true);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<UserImportEntry> importTask = (BatchTaskVo<UserImportEntry>) waitImport(
+				resource.getImportTask(resource.full(input, new String[0], "cp1250", options)));
+
+		// Only the invalid entry is kept
+		Assert.assertTrue(importTask.isStreaming());
+		Assert.assertEquals(2, importTask.getStatus().getEntries());
+		Assert.assertEquals(2, importTask.getStatus().getDone());
+		Assert.assertEquals(1, importTask.getEntries().size());
+		Assert.assertEquals(Boolean.FALSE, importTask.getEntries().get(0).getStatus());
+		Assert.assertNotNull(importTask.getEntries().get(0).getStatusText());
+
+		// Check LDAP
+		Mockito.verify(mockLdapResource, new DefaultVerificationMode(data -> {
+			if (data.getAllInvocations().size() != 1) {
+				throw new MockitoException("Expect one call");
+			}
+			Assert.assertEquals("kloubli8", ((UserOrgEditionVo) data.getAllInvocations().get(0).getArguments()[0]).getId());
+		})).create(null);
+	}
+
+	@Test
+	public void fullParallel() throws IOException, InterruptedException {
+		final InputStream input = new ByteArrayInputStream(("Loubli;Sébastien;kloubli10;my.address@sample.com;gfi;jira\n"
+				+ "Loubli;Sébastien;kloubli11;my.address@sample.com;ing;jira\nLoubli;Sébastien;kloubli12;my.address@sample.com;gfi;jira")
+						.getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setParallel(2);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<UserImportEntry> importTask = (BatchTaskVo<UserImportEntry>) waitImport(
+				resource.getImportTask(resource.full(input, new String[0], "cp1250", options)));
+		Assert.assertEquals(2, importTask.getParallel());
+		Assert.assertEquals(3, importTask.getStatus().getDone());
+		Assert.assertTrue(importTask.getEntries().stream().allMatch(e -> e.getStatus()));
+		Mockito.verify(mockLdapResource, Mockito.times(3)).create(ArgumentMatchers.any(UserOrgEditionVo.class));
+	}
+
+	@Test
+	public void fullElastic() throws IOException, InterruptedException {
+		final InputStream input = new ByteArrayInputStream(("Loubli;Sébastien;kloubli30;my.address@sample.com;gfi;jira\n"
+				+ "Loubli;Sébastien;kloubli31;my.address@sample.com;ing;jira\nLoubli;Sébastien;kloubli32;my.address@sample.com;gfi;jira")
+						.getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setElastic(true);
+		options.setParallel(1000);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<UserImportEntry> importTask = (BatchTaskVo<UserImportEntry>) waitImport(
+				resource.getImportTask(resource.full(input, new String[0], "cp1250", options)));
+		Assert.assertTrue(importTask.isElastic());
+		Assert.assertEquals(256, importTask.getParallel());
+		Assert.assertEquals(3, importTask.getStatus().getDone());
+		Assert.assertTrue(importTask.getEntries().stream().allMatch(e -> e.getStatus()));
+		Mockito.verify(mockLdapResource, Mockito.times(3)).create(ArgumentMatchers.any(UserOrgEditionVo.class));
+	}
+
+	@Test
+	public void fullDryRun() throws IOException, InterruptedException {
+		Mockito.doThrow(new ValidationJsonException("company", BusinessException.KEY_UNKNOW_ID, "0", "company", "1", "any"))
+				.when(mockLdapResource).checkCreate(ArgumentMatchers.argThat(u -> "kloubli16".equals(u.getId())));
+		final InputStream input = new ByteArrayInputStream(
+				"Loubli;Sébastien;kloubli15;my.address@sample.com;gfi;jira\nLoubli;Sébastien;kloubli16;my.address@sample.com;any;jira"
+						.getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setDryRun(true);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<UserImportEntry> importTask = (BatchTaskVo<UserImportEntry>) waitImport(
+				resource.getImportTask(resource.full(input, new String[0], "cp1250", options)));
+
+		// Check the plan
+		Assert.assertTrue(importTask.isDryRun());
+		Assert.assertEquals(2, importTask.getStatus().getDone());
+		Assert.assertEquals(1, importTask.getStatus().getPlan().get("create").intValue());
+		Assert.assertEquals(1, importTask.getStatus().getPlan().get("error:company-unknown-id").intValue());
+		final UserImportEntry entry = importTask.getEntries().get(0);
+		Assert.assertEquals("create", entry.getStatusText());
+		Assert.assertTrue(entry.getStatus());
+		Assert.assertFalse(importTask.getEntries().get(1).getStatus());
+
+		// Nothing has been written
+		Mockito.verify(mockLdapResource, Mockito.never()).create(ArgumentMatchers.any(UserOrgEditionVo.class));
+	}
+
+	@Test
+	public void fullDryRunInvalid() throws IOException, InterruptedException {
+		final InputStream input = new ByteArrayInputStream(
+				"Loubli;Sébastien;kloubli41;my.address@sample.com;gfi;jira\nLoubli;Sébastien;;my.address@sample.com;gfi;jira".getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setDryRun(true);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<UserImportEntry> importTask = (BatchTaskVo<UserImportEntry>) waitImport(
+				resource.getImportTask(resource.full(input, new String[0], "cp1250", options)));
+
+		// The invalid entry is counted in the plan, not proceeded
+		Assert.assertEquals(2, importTask.getStatus().getDone());
+		Assert.assertEquals(1, importTask.getStatus().getPlan().get("create").intValue());
+		Assert.assertEquals(1, importTask.getStatus().getPlan().get("error:invalid").intValue());
+		Assert.assertTrue(importTask.getEntries().get(0).getStatus());
+		Assert.assertFalse(importTask.getEntries().get(1).getStatus());
+		Mockito.verify(mockLdapResource).checkCreate(ArgumentMatchers.any(UserOrgEditionVo.class));
+	}
+
+	@Test
+	public void getImportEntries() throws IOException, InterruptedException {
+		final BatchTaskVo<UserImportEntry> importTask = full("Loubli;Sébastien;kloubli13;my.address@sample.com;gfi;jira");
+		Assert.assertTrue(importTask.isStored());
+
+		// Read from the store
+		final TableItem<BatchElement> entries = resource.getImportEntries(importTask.getId(), Boolean.TRUE, newUriInfo());
+		Assert.assertEquals(1, entries.getRecordsTotal());
+		Assert.assertEquals("kloubli13", ((UserImportEntry) entries.getData().get(0)).getId());
+		Assert.assertTrue(entries.getData().get(0).getStatus());
+		Assert.assertEquals(0, resource.getImportEntries(importTask.getId(), Boolean.FALSE, newUriInfo()).getRecordsTotal());
+	}
+
+	@Test
+	public void getImportEntriesNotFound() {
+		Assert.assertNull(resource.getImportEntries(-1, null, newUriInfo()));
+	}
+
+	@Test
+	public void getImportMetrics() throws IOException, InterruptedException {
+		Mockito.doThrow(new ValidationJsonException("company", BusinessException.KEY_UNKNOW_ID, "0", "company", "1", "any"))
+				.when(mockLdapResource).create(ArgumentMatchers.argThat(u -> "kloubli34".equals(u.getId())));
+		final InputStream input = new ByteArrayInputStream(
+				"Loubli;Sébastien;kloubli33;my.address@sample.com;gfi;jira\nLoubli;Sébastien;kloubli34;my.address@sample.com;any;jira"
+						.getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final long globalSuccesses = resource.getMetrics().getSuccesses();
+		final BatchTaskVo<? extends BatchElement> importTask = waitImport(
+				resource.getImportTask(resource.full(input, new String[0], "cp1250", new BatchOptions())));
+
+		// Check the metrics of this task
+		final BatchMetrics metrics = resource.getImportMetrics(importTask.getId());
+		Assert.assertSame(importTask.getStatus().getMetrics(), metrics);
+		Assert.assertEquals(1, metrics.getSuccesses());
+		Assert.assertEquals(1, metrics.getFailures().get("company-unknown-id").longValue());
+		Assert.assertEquals(2, metrics.getLatencies().get("user-full.create").getCount());
+		Assert.assertTrue(metrics.getThroughput() > 0);
+
+		// Check the global metrics
+		Assert.assertEquals(globalSuccesses + 1, resource.getMetrics().getSuccesses());
+		Assert.assertNull(resource.getImportMetrics(-1));
+	}
+
+	@Test
+	public void getImportFailures() throws IOException, InterruptedException {
+		Mockito.doThrow(new BusinessException("message")).when(mockLdapResource).create(ArgumentMatchers.argThat(u -> "kloubli36".equals(u.getId())));
+		final InputStream input = new ByteArrayInputStream(
+				"kloubli35;Loubli;Sébastien;gfi;my.address@sample.com\nkloubli36;Loubli;Sébastien;gfi;my.address@sample.com".getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchTaskVo<? extends BatchElement> importTask = waitImport(resource.getImportTask(
+				resource.full(input, new String[] { "id", "lastName", "firstName", "company", "mail" }, "cp1250", new BatchOptions())));
+		Assert.assertTrue(importTask.isStored());
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		resource.getImportFailures(importTask.getId()).write(output);
+
+		// Only the failed entry, in the uploaded columns
+		Assert.assertEquals("kloubli36;Loubli;Sébastien;gfi;my.address@sample.com;message\n", new String(output.toByteArray(), StandardCharsets.UTF_8));
+		Assert.assertNull(resource.getImportFailures(-1));
+	}
+
+	@Test
+	public void fullBackground() throws IOException, InterruptedException {
+		final InputStream input = new ByteArrayInputStream("Loubli;Sébastien;kloubli40;my.address@sample.com;gfi;jira".getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setBackground(true);
+		@SuppressWarnings("unchecked")
+		final BatchTaskVo<UserImportEntry> importTask = (BatchTaskVo<UserImportEntry>) waitImport(
+				waitParsed(resource.full(input, new String[0], "cp1250", options)));
+
+		// Check the result
+		final UserImportEntry importEntry = checkImportTask(importTask);
+		Assert.assertEquals("kloubli40", importEntry.getId());
+		Assert.assertTrue(importEntry.getStatus());
+	}
+
+	@Test
+	public void fullBackgroundInvalid() throws IOException, InterruptedException {
+		final InputStream input = new ByteArrayInputStream("Loubli;Sébastien;;my.address@sample.com;gfi;jira".getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setBackground(true);
+		final ImportStatus status = waitParsed(resource.full(input, new String[0], "cp1250", options)).getStatus();
+
+		// The error is reported by the status, nothing is proceeded
+		Assert.assertEquals(ImportState.CANCELED, status.getState());
+		Assert.assertFalse(status.getStatus());
+		Assert.assertNotNull(status.getEnd());
+		Assert.assertNotNull(status.getError());
+		Assert.assertEquals(0, status.getDone());
+		Mockito.verify(mockLdapResource, Mockito.never()).create(ArgumentMatchers.any(UserOrgEditionVo.class));
+	}
+
+	@Test
+	public void fullIdempotencyKey() throws IOException, InterruptedException {
+		final byte[] content = "Loubli;Sébastien;kloubli41;my.address@sample.com;gfi;jira".getBytes("cp1250");
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setIdempotencyKey("key-41");
+		final long id = resource.full(new ByteArrayInputStream(content), new String[0], "cp1250", options);
+		waitImport(resource.getImportTask(id));
+
+		// Same key, the previous task is returned
+		Assert.assertEquals(id, resource.full(new ByteArrayInputStream(content), new String[0], "cp1250", options));
+		Mockito.verify(mockLdapResource, Mockito.times(1)).create(ArgumentMatchers.any(UserOrgEditionVo.class));
+
+		// Another key, another task
+		options.setIdempotencyKey("key-42");
+		Assert.assertNotEquals(id, resource.full(new ByteArrayInputStream(content), new String[0], "cp1250", options));
+	}
+
+	@Test
+	public void fullDeduplicate() throws IOException, InterruptedException {
+		final byte[] content = "Loubli;Sébastien;kloubli43;my.address@sample.com;gfi;jira".getBytes("cp1250");
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setDeduplicate(true);
+		final long id = resource.full(new ByteArrayInputStream(content), new String[0], "cp1250", options);
+		waitImport(resource.getImportTask(id));
+
+		// Same content, the previous task is returned
+		Assert.assertEquals(id, resource.full(new ByteArrayInputStream(content), new String[0], "cp1250", options));
+
+		// Another content, another task
+		Assert.assertNotEquals(id, resource.full(
+				new ByteArrayInputStream("Loubli;Sébastien;kloubli44;my.address@sample.com;gfi;jira".getBytes("cp1250")), new String[0], "cp1250",
+				options));
+	}
+
+	@Test
+	public void fullDeduplicateInvalid() throws IOException {
+		final byte[] content = "Loubli;Sébastien;;my.address@sample.com;gfi;jira".getBytes("cp1250");
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setDeduplicate(true);
+		for (int i = 0; i < 2; i++) {
+			// A rejected submission is not registered, and is rejected again
+			try {
+				resource.full(new ByteArrayInputStream(content), new String[0], "cp1250", options);
+				Assert.fail("Expected a validation failure");
+			} catch (final ConstraintViolationException e) {
+				// Expected
+			}
+		}
+	}
+
+	/**
+	 * Wait for the uploaded entries to be read and validated.
+	 */
+	private BatchTaskVo<? extends BatchElement> waitParsed(final long id) throws InterruptedException {
+		final BatchTaskVo<? extends BatchElement> importTask = resource.getImportTask(id);
+		Assert.assertNotNull(importTask);
+		for (int i = 1000; i-- > 0 && importTask.getStatus().getState() == ImportState.PARSING;) {
+			Thread.sleep(10);
+		}
+		return importTask;
+	}
+
+	@Test
+	public void fullQueued() throws IOException {
+		final InputStream input = new ByteArrayInputStream("Loubli;Sébastien;kloubli37;my.address@sample.com;gfi;jira".getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setNotBefore(System.currentTimeMillis() + DateUtils.MILLIS_PER_HOUR);
+		final long id = resource.full(input, new String[0], "cp1250", options);
+
+		// Validated, but not yet proceeded
+		final ImportStatus status = resource.getImportStatus(id);
+		Assert.assertEquals(ImportState.QUEUED, status.getState());
+		Assert.assertEquals(options.getNotBefore(), status.getNotBefore().getTime());
+		Assert.assertNull(status.getStart());
+		Assert.assertEquals(1, status.getEntries());
+		Assert.assertSame(status, resource.getQueue().get(id));
+		Mockito.verify(mockLdapResource, Mockito.never()).create(ArgumentMatchers.any(UserOrgEditionVo.class));
+
+		// Cancel the queued task
+		Assert.assertEquals(ImportState.CANCELED, resource.cancel(id).getState());
+		Assert.assertFalse(resource.getQueue().containsKey(id));
+	}
+
+	@Test
+	public void fullQueuedStreaming() throws IOException {
+		thrown.expect(ValidationJsonException.class);
+		final InputStream input = new ByteArrayInputStream("Loubli;Sébastien;kloubli38;my.address@sample.com;gfi;jira".getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setStreaming(true);
+		options.setNotBefore(System.currentTimeMillis() + DateUtils.MILLIS_PER_HOUR);
+		resource.full(input, new String[0], "cp1250", options);
+	}
+
+	@Test
+	public void getImportProgress() throws IOException, InterruptedException {
+		final BatchTaskVo<UserImportEntry> importTask = full("Loubli;Sébastien;kloubli14;my.address@sample.com;gfi;jira");
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		resource.getImportProgress(importTask.getId(), 0).write(output);
+
+		// Only one event, the task is completed
+		final String events = new String(output.toByteArray(), StandardCharsets.UTF_8);
+		Assert.assertTrue(events.startsWith("event: progress\ndata: {"));
+		Assert.assertTrue(events.contains("\"done\":1"));
+		Assert.assertTrue(events.contains("\"failures\":0"));
+		Assert.assertTrue(events.contains("\"eta\":0"));
+		Assert.assertEquals(events.indexOf("event:"), events.lastIndexOf("event:"));
+	}
+
+	@Test
+	public void getImportProgressQueued() throws IOException {
+		final InputStream input = new ByteArrayInputStream("Loubli;Sébastien;kloubli40;my.address@sample.com;gfi;jira".getBytes("cp1250"));
+		initSpringSecurityContext(DEFAULT_USER);
+		final BatchOptions options = new BatchOptions();
+		options.setNotBefore(System.currentTimeMillis() + DateUtils.MILLIS_PER_HOUR);
+		final long id = resource.full(input, new String[0], "cp1250", options);
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final long start = System.currentTimeMillis();
+		resource.getImportProgress(id, 0).write(output);
+
+		// The stream is closed right away, the client reconnects later
+		Assert.assertTrue(System.currentTimeMillis() - start < DateUtils.MILLIS_PER_SECOND);
+		final String events = new String(output.toByteArray(), StandardCharsets.UTF_8);
+		Assert.assertTrue(events.contains("\"state\":\"QUEUED\""));
+		Assert.assertTrue(events.contains("retry: " + 5 * DateUtils.MILLIS_PER_MINUTE + "\n\n"));
+		resource.cancel(id);
+	}
+
+	@Test
+	public void getImportProgressTooManyStreams() throws IOException, InterruptedException {
+		final BatchTaskVo<UserImportEntry> importTask = full("Loubli;Sébastien;kloubli41;my.address@sample.com;gfi;jira");
+		final List<StreamingOutput> streams = new ArrayList<>();
+		try {
+			for (int i = 0; i < AbstractBatchResource.MAX_PROGRESS_STREAMS; i++) {
+				streams.add(resource.getImportProgress(importTask.getId(), 0));
+			}
+
+			// No more stream is accepted until one is closed
+			try {
+				resource.getImportProgress(importTask.getId(), 0);
+				Assert.fail();
+			} catch (final BusinessException e) {
+				Assert.assertEquals("too-many-streams", e.getMessage());
+			}
+		} finally {
+			for (final StreamingOutput stream : streams) {
+				stream.write(new ByteArrayOutputStream());
+			}
+		}
+		resource.getImportProgress(importTask.getId(), 0).write(new ByteArrayOutputStream());
+	}
+
+	@Test
+	public void getImportProgressNotFound() {
+		Assert.assertNull(resource.getImportProgress(-1, 0));
+	}
+
+	@Test
+	public void cancelCompleted() throws IOException, InterruptedException {
+		final BatchTaskVo<UserImportEntry> importTask = full("Loubli;Sébastien;kloubli17;my.address@sample.com;gfi;jira");
+		Assert.assertEquals(ImportState.COMPLETED, importTask.getStatus().getState());
+		thrown.expect(BusinessException.class);
+		thrown.expectMessage("invalid-state");
+		resource.cancel(importTask.getId());
+	}
+
+	@Test
+	public void pauseResumeCancel() throws IOException, InterruptedException {
+		final BatchTaskVo<UserImportEntry> importTask = full("Loubli;Sébastien;kloubli18;my.address@sample.com;gfi;jira");
+
+		// Simulate a running task
+		importTask.getStatus().setState(ImportState.RUNNING);
+		Assert.assertEquals(ImportState.PAUSED, resource.pause(importTask.getId()).getState());
+		Assert.assertEquals(ImportState.RUNNING, resource.resume(importTask.getId()).getState());
+		Assert.assertEquals(ImportState.CANCELED, resource.cancel(importTask.getId()).getState());
+	}
+
+	@Test
+	public void cancelNotFound() {
+		Assert.assertNull(resource.cancel(-1));
+		Assert.assertNull(resource.pause(-1));
+		Assert.assertNull(resource.resume(-1));
+	}
+
 	@Test
 	public void getImportTaskFailed() {
 		Assert.assertNull(resource.getImportTask(-1));
@@ -284,6 +807,15 @@ public class UserBatchLdapResourceTest extends AbstractLdapBatchTest {
 		oldTask.getStatus().setEnd(new Date());
 	}
 
+	private UriInfo newUriInfo() {
+		final UriInfo uriInfo = Mockito.mock(UriInfo.class);
+		Mockito.when(uriInfo.getQueryParameters()).thenReturn(new MetadataMap<>());
+		uriInfo.getQueryParameters().add("draw", "1");
+		uriInfo.getQueryParameters().add("start", "0");
+		uriInfo.getQueryParameters().add("length", "10");
+		return uriInfo;
+	}
+
 	protected <U extends BatchElement> BatchTaskVo<U> full(final InputStream input, final String[] headers) throws IOException, InterruptedException {
 		return full(input, headers, "cp1252");
 	}
@@ -291,7 +823,7 @@ public class UserBatchLdapResourceTest extends AbstractLdapBatchTest {
 	protected <U extends BatchElement> BatchTaskVo<U> full(final InputStream input, final String[] headers, final String encoding)
 			throws IOException, InterruptedException {
 		initSpringSecurityContext(DEFAULT_USER);
-		final long id = resource.full(input, headers, encoding);
+		final long id = resource.full(input, headers, encoding, new BatchOptions());
 		Assert.assertNotNull(id);
 		@SuppressWarnings("unchecked")
 		final BatchTaskVo<U> importTask = (BatchTaskVo<U>) resource.getImportTask(id);
@@ -1,5 +1,6 @@
 package org.ligoj.app.plugin.id.resource.batch;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -14,10 +15,14 @@ import org.apache.cxf.message.Message;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.ligoj.app.plugin.id.resource.UserOrgEditionVo;
 import org.ligoj.app.plugin.id.resource.UserOrgResource;
 import org.ligoj.bootstrap.AbstractSecurityTest;
+import org.ligoj.bootstrap.core.resource.BusinessException;
 import org.ligoj.bootstrap.core.resource.mapper.FailSafeExceptionMapper;
 import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
 import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
@@ -34,6 +39,9 @@ public class UserFullLdapTaskTest extends AbstractSecurityTest {
 		task = new UserFullLdapTask();
 		task.resource = Mockito.mock(UserOrgResource.class);
 		task.securityHelper = new SecurityHelper();
+		task.store = Mockito.mock(BatchTaskStore.class);
+		task.throttle = Mockito.mock(BatchThrottle.class);
+		task.telemetry = new BatchTelemetry();
 		task.jaxrsFactory = ServerProviderFactory.getInstance();
 		initSpringSecurityContext(DEFAULT_USER);
 	}
@@ -52,11 +60,44 @@ public class UserFullLdapTaskTest extends AbstractSecurityTest {
 		Assert.assertEquals(1, importTask.getStatus().getEntries());
 	}
 
+	@Test
+	public void runCanceled() {
+		final BatchTaskVo<UserImportEntry> importTask = new BatchTaskVo<>();
+		importTask.setEntries(Collections.singletonList(new UserImportEntry()));
+		task.configure(importTask);
+		Assert.assertEquals(ImportState.RUNNING, importTask.getStatus().getState());
+		importTask.getStatus().setState(ImportState.CANCELED);
+		task.run();
+
+		// No entry has been proceeded
+		Assert.assertEquals(Boolean.FALSE, importTask.getStatus().getStatus());
+		Assert.assertEquals(ImportState.CANCELED, importTask.getStatus().getState());
+		Assert.assertEquals(0, importTask.getStatus().getDone());
+		Assert.assertNull(importTask.getEntries().get(0).getStatus());
+		Mockito.verifyZeroInteractions(task.resource);
+	}
+
+	@Test
+	public void configureCanceled() {
+		final BatchTaskVo<UserImportEntry> importTask = new BatchTaskVo<>();
+		importTask.setEntries(Collections.singletonList(new UserImportEntry()));
+
+		// Canceled while parsing
+		importTask.getStatus().setState(ImportState.CANCELED);
+		task.configure(importTask);
+		Assert.assertEquals(ImportState.CANCELED, importTask.getStatus().getState());
+		task.run();
+		Assert.assertEquals(Boolean.FALSE, importTask.getStatus().getStatus());
+		Assert.assertEquals(ImportState.CANCELED, importTask.getStatus().getState());
+		Assert.assertNull(importTask.getEntries().get(0).getStatus());
+		Mockito.verifyZeroInteractions(task.resource);
+	}
+
 	@Test
 	public void run() {
 		final BatchTaskVo<UserImportEntry> importTask = new BatchTaskVo<>();
 		final UserImportEntry entry = new UserImportEntry();
-		entry.setGroups(",group,");
+		entry.setGroups(Arrays.asList("", "group", " "));
 		importTask.setEntries(Collections.singletonList(entry));
 		task.configure(importTask);
 		task.run();
@@ -65,6 +106,112 @@ public class UserFullLdapTaskTest extends AbstractSecurityTest {
 		Assert.assertEquals(1, importTask.getStatus().getEntries());
 	}
 
+	@Test
+	public void runDryRun() {
+		final BatchTaskVo<UserImportEntry> importTask = new BatchTaskVo<>();
+		importTask.setDryRun(true);
+		importTask.setEntries(Arrays.asList(newEntry("gfi"), newEntry("gfi"), newEntry("ligoj")));
+		importTask.getEntries().get(0).setId("user1");
+		importTask.getEntries().get(1).setId("user2");
+		importTask.getEntries().get(2).setId("USER1");
+		task.configure(importTask);
+		task.run();
+
+		// A new user is planned once
+		Assert.assertEquals(3, importTask.getStatus().getDone());
+		Assert.assertEquals(2, importTask.getStatus().getPlan().get("create").intValue());
+		Assert.assertEquals(1, importTask.getStatus().getPlan().get("error:id-already-exist").intValue());
+		Assert.assertFalse(importTask.getEntries().get(2).getStatus());
+		Mockito.verify(task.resource, Mockito.never()).create(ArgumentMatchers.any(UserOrgEditionVo.class));
+	}
+
+	@Test
+	public void runFailed() {
+		final BatchTaskVo<UserImportEntry> importTask = new BatchTaskVo<>();
+		importTask.setEntries(new BatchFailures<>());
+		importTask.setStreaming(true);
+		final BatchFeed<UserImportEntry> feed = Mockito.spy(new BatchFeed<>());
+		Mockito.doThrow(new IllegalStateException("feed")).when(feed).iterator();
+		importTask.setFeed(feed);
+		task.configure(importTask);
+		task.run();
+
+		// The task is completed, and the reader is released
+		Assert.assertEquals(Boolean.FALSE, importTask.getStatus().getStatus());
+		Assert.assertEquals(ImportState.CANCELED, importTask.getStatus().getState());
+		Assert.assertEquals("feed", importTask.getStatus().getError());
+		Assert.assertNotNull(importTask.getStatus().getEnd());
+		Assert.assertTrue(feed.isCanceled());
+		Mockito.verify(task.store).save(importTask);
+	}
+
+	@Test
+	public void runCheckpointed() {
+		final BatchTaskVo<UserImportEntry> importTask = new BatchTaskVo<>();
+		importTask.setEntries(Collections.singletonList(new UserImportEntry()));
+		importTask.setResource(UserBatchLdapResource.class.getName());
+		task.configure(importTask);
+		task.run();
+		Mockito.verify(task.store).create(importTask, UserFullLdapTask.class.getName());
+		Mockito.verify(task.store).save(importTask);
+	}
+
+	@Test
+	public void runResumed() {
+		final BatchTaskVo<UserImportEntry> importTask = new BatchTaskVo<>();
+		final UserImportEntry done = new UserImportEntry();
+		done.setId("done");
+		done.setStatus(Boolean.TRUE);
+		final UserImportEntry entry = new UserImportEntry();
+		entry.setId("entry");
+		importTask.setEntries(Arrays.asList(done, entry));
+		importTask.setResource(UserBatchLdapResource.class.getName());
+		importTask.setResumed(true);
+		importTask.getStatus().setDone(1);
+		task.configure(importTask);
+		task.run();
+
+		// Only the remaining entry is proceeded
+		Assert.assertEquals(Boolean.TRUE, importTask.getStatus().getStatus());
+		Assert.assertEquals(2, importTask.getStatus().getDone());
+		Assert.assertEquals(Boolean.TRUE, entry.getStatus());
+		Mockito.verify(task.resource).create(Mockito.argThat(u -> "entry".equals(u.getId())));
+		Mockito.verify(task.store, Mockito.never()).create(Mockito.any(), Mockito.any());
+	}
+
+	@Test
+	public void runErrors() {
+		Mockito.doThrow(new ValidationJsonException("company", BusinessException.KEY_UNKNOW_ID, "0", "company", "1", "any")).when(task.resource)
+				.create(ArgumentMatchers.argThat(u -> "any".equals(u.getCompany())));
+		Mockito.doThrow(new ValidationJsonException("company", BusinessException.KEY_UNKNOW_ID, "0", "company", "1", "other")).when(task.resource)
+				.create(ArgumentMatchers.argThat(u -> "other".equals(u.getCompany())));
+		final BatchTaskVo<UserImportEntry> importTask = new BatchTaskVo<>();
+		importTask.setEntries(Arrays.asList(newEntry("any"), newEntry("any"), newEntry("other")));
+		task.configure(importTask);
+		task.jaxrsFactory = Mockito.mock(ServerProviderFactory.class);
+		task.run();
+
+		// The distinct errors are stored once
+		Assert.assertEquals(3, importTask.getStatus().getFailures());
+		Assert.assertEquals(2, importTask.getErrors().size());
+		Assert.assertEquals("company-unknown-id", importTask.getErrors().get(0).getKey());
+		Assert.assertEquals("any", importTask.getErrors().get(0).getParameters().get("1"));
+		Assert.assertEquals("other", importTask.getErrors().get(1).getParameters().get("1"));
+		Assert.assertEquals(0, importTask.getEntries().get(0).getError().intValue());
+		Assert.assertEquals(0, importTask.getEntries().get(1).getError().intValue());
+		Assert.assertEquals(1, importTask.getEntries().get(2).getError().intValue());
+		Assert.assertSame(importTask.getEntries().get(0).getStatusText(), importTask.getEntries().get(1).getStatusText());
+
+		// The exception mapper is resolved once
+		Mockito.verify(task.jaxrsFactory).createExceptionMapper(ValidationJsonException.class, null);
+	}
+
+	private UserImportEntry newEntry(final String company) {
+		final UserImportEntry entry = new UserImportEntry();
+		entry.setCompany(company);
+		return entry;
+	}
+
 	@Test
 	public void configureMessage() throws IllegalArgumentException, IllegalAccessException {
 		final ServerProviderFactory instance = ServerProviderFactory.getInstance();
@@ -103,6 +250,8 @@ public class UserFullLdapTaskTest extends AbstractSecurityTest {
 			}
 
 		};
+		task.throttle = Mockito.mock(BatchThrottle.class);
+		task.telemetry = new BatchTelemetry();
 		final Exchange exchange = Mockito.mock(Exchange.class);
 		Mockito.when(message.getExchange()).thenReturn(exchange);
 		final Endpoint endpoint = Mockito.mock(Endpoint.class);